@@ -0,0 +1,317 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of asynchronous nodes, handing the values written by any number of producers
+ * to a task draining them on an executor. The queue is a ring of slots, each with a sequence
+ * number telling whether the slot is free for the position a producer wants to write to or
+ * holds a value published for the position the consumer wants to read. Producers claim a
+ * position with a single compare-and-set and never lock, and the drain task is only scheduled
+ * if none is scheduled yet, i.e. when the queue changes from empty to non-empty. What happens
+ * if the queue is full is determined by its {@link OverflowPolicy}; only producers of a queue
+ * with {@link OverflowPolicy#BLOCK} ever wait.
+ * The queue only manages the positions. Subclasses keep the values in arrays of their own,
+ * indexed by the slot of a position:
+ * <pre>
+ * long pos = claim();
+ * if (pos >= 0) {
+ *     mValues[slot(pos)] = value;
+ *     publish(pos);
+ * }
+ * </pre>
+ * and move the values to the consumer in {@link AsyncQueue#take(int, int)} and
+ * {@link AsyncQueue#deliver(int)}.
+ *
+ * @author agent
+ */
+public abstract class AsyncQueue
+{
+	// sequence number of a slot a value is being taken from or replaced in
+	private static final long BUSY = -1;
+
+	private final Executor       mExecutor;
+	private final OverflowPolicy mPolicy;
+	private final int            mCapacity;
+	// a slot is free for position p if its sequence is p and holds the value of p if it is p+1
+	private final AtomicLongArray mSequences;
+	private final AtomicLong      mHead = new AtomicLong();
+	private final AtomicLong      mTail = new AtomicLong();
+	private final AtomicBoolean   mScheduled = new AtomicBoolean();
+	private final AtomicLong      mDropped = new AtomicLong();
+	// producers waiting for room in the queue
+	private final AtomicInteger   mWaiting = new AtomicInteger();
+	private final Object          mNotFull = new Object();
+	// serializes the consumers
+	private final Object          mDrainLock = new Object();
+
+	// drains in the manager context the queue was created in
+	private final Runnable mDrainTask = DatastreamManager.getInstance().inContext(new Runnable() {
+		@Override
+		public void run()
+		{
+			drain();
+		}
+	});
+
+	/**
+	 * Create a new queue.
+	 *
+	 * @param executor The executor running the task draining the queue.
+	 * @param capacity The maximum number of values in the queue.
+	 * @param policy   The behaviour if a value is written while the queue is full.
+	 */
+	protected AsyncQueue(Executor executor, int capacity, OverflowPolicy policy)
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		mExecutor = executor;
+		mPolicy = policy;
+		mCapacity = capacity;
+		mSequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			mSequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Get the maximum number of values in the queue, which is the size of the arrays of the subclass.
+	 */
+	public final int getCapacity()
+	{
+		return mCapacity;
+	}
+
+	/**
+	 * Get the index of the slot of a position.
+	 */
+	protected final int slot(long pos)
+	{
+		return (int)(pos % mCapacity);
+	}
+
+	/**
+	 * Claim a position to write a value to. Blocks if the queue is full and the policy is
+	 * {@link OverflowPolicy#BLOCK}. For {@link OverflowPolicy#SAMPLE} the position of the
+	 * newest value is returned again if the queue is full. The value has to be stored in the
+	 * slot of the position, followed by a call to {@link AsyncQueue#publish(long)}.
+	 *
+	 * @return The position or -1 if the value is to be dropped.
+	 */
+	protected final long claim()
+	{
+		while (true) {
+			long pos = mTail.get();
+			long seq = mSequences.get(slot(pos));
+			if (seq == pos) {
+				if (mTail.compareAndSet(pos, pos+1)) {
+					return pos;
+				}
+			}
+			else if (seq < pos) {
+				// the slot still holds the value written a lap ago: the queue is full
+				switch (mPolicy) {
+				case BLOCK:
+					await(pos);
+					break;
+				case DROP_OLDEST:
+					long oldest = poll();
+					if (oldest >= 0) {
+						discard(slot(oldest));
+						free(oldest);
+						mDropped.incrementAndGet();
+					}
+					break;
+				case DROP_NEWEST:
+					mDropped.incrementAndGet();
+					return -1;
+				case SAMPLE:
+					long newest = pos-1;
+					if (mSequences.compareAndSet(slot(newest), newest+1, BUSY)) {
+						mDropped.incrementAndGet();
+						return newest;
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Publish the value stored for a position claimed before, scheduling the drain task
+	 * unless it is scheduled already.
+	 */
+	protected final void publish(long pos)
+	{
+		mSequences.set(slot(pos), pos+1);
+		if (!mScheduled.get()) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Move the value of a slot to the given index of the buffer handed to the successors.
+	 * Called by the consumer only.
+	 */
+	protected abstract void take(int slot, int index);
+
+	/**
+	 * Drop the value of a slot (e.g. to release a reference to it).
+	 */
+	protected abstract void discard(int slot);
+
+	/**
+	 * Hand the values taken so far to the successors. Called by the consumer only.
+	 *
+	 * @param count The number of values taken, starting at index 0.
+	 */
+	protected abstract void deliver(int count);
+
+	/**
+	 * Hand all values queued so far to the successors in the calling thread.
+	 */
+	public final void drain()
+	{
+		synchronized (mDrainLock) {
+			while (true) {
+				int n = 0;
+				long pos;
+				while (n < mCapacity && (pos = poll()) >= 0) {
+					take(slot(pos), n++);
+					free(pos);
+				}
+				if (n > 0) {
+					deliver(n);
+					continue;
+				}
+				mScheduled.set(false);
+				// values published after the queue was found empty have seen the flag set
+				if (isEmpty() || !mScheduled.compareAndSet(false, true)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discard all values queued so far.
+	 */
+	public final void discardAll()
+	{
+		synchronized (mDrainLock) {
+			long pos;
+			while ((pos = poll()) >= 0) {
+				discard(slot(pos));
+				free(pos);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of values dropped or replaced because the queue was full.
+	 */
+	public final long getDropped()
+	{
+		return mDropped.get();
+	}
+
+	/**
+	 * Reset the number of values dropped.
+	 */
+	public final void resetDropped()
+	{
+		mDropped.set(0);
+	}
+
+	private boolean isEmpty()
+	{
+		long pos = mHead.get();
+		return mSequences.get(slot(pos)) != pos+1;
+	}
+
+	/**
+	 * Take the oldest position out of the queue. Consumers and producers dropping the oldest
+	 * value compete for it.
+	 *
+	 * @return The position or -1 if the queue is empty.
+	 */
+	private long poll()
+	{
+		while (true) {
+			long pos = mHead.get();
+			int slot = slot(pos);
+			long seq = mSequences.get(slot);
+			if (seq == pos+1) {
+				if (mSequences.compareAndSet(slot, seq, BUSY)) {
+					mHead.set(pos+1);
+					return pos;
+				}
+			}
+			else if (seq == BUSY) {
+				// taken by another thread that is about to move the head or replaced by a producer
+				Thread.yield();
+			}
+			else if (seq <= pos) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Free the slot of a position taken out of the queue for the next lap.
+	 */
+	private void free(long pos)
+	{
+		mSequences.set(slot(pos), pos+mCapacity);
+		if (mWaiting.get() > 0) {
+			synchronized (mNotFull) {
+				mNotFull.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Wait until the slot of a position is freed or another producer claimed the position.
+	 */
+	private void await(long pos)
+	{
+		// make sure somebody is draining the queue we are waiting for
+		schedule();
+		mWaiting.incrementAndGet();
+		try {
+			synchronized (mNotFull) {
+				while (mTail.get() == pos && mSequences.get(slot(pos)) < pos) {
+					mNotFull.wait();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StreamException("Interrupted while waiting for room in the queue.");
+		}
+		finally {
+			mWaiting.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Make sure a drain task is scheduled.
+	 */
+	private void schedule()
+	{
+		if (mScheduled.compareAndSet(false, true)) {
+			try {
+				mExecutor.execute(mDrainTask);
+			}
+			catch (RuntimeException e) {
+				mScheduled.set(false);
+				throw e;
+			}
+		}
+	}
+}
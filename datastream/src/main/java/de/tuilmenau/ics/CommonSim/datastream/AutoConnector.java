@@ -21,6 +21,7 @@ public class AutoConnector implements IStreamChangeListener
 {
 	Pattern  mInPattern;
 	Class<?> mTargetClass;
+	private String mPrefix;
 	private String mOutPattern;
 	private boolean mIgnoreErrors;
 
@@ -69,6 +70,92 @@ public AutoConnector(String inputPattern, String outputPattern, Class<?> outputC
 		mInPattern  = Pattern.compile(inputPattern);
 		mOutPattern = outputPattern;
 		mTargetClass = outputClass;
+		mPrefix = literalPrefix(inputPattern);
+	}
+	
+	/**
+	 * Get the literal prefix of the input pattern, i.e. the characters every name matched by
+	 * the input pattern starts with. This is used by the {@link AutoConnectorSet} to skip
+	 * evaluating the pattern for names which cannot match.
+	 * 
+	 * @return The literal prefix of the input pattern. May be empty.
+	 */
+	public String getLiteralPrefix()
+	{
+		return mPrefix;
+	}
+	
+	/**
+	 * Determine the literal prefix of a regular expression. The result is conservative: 
+	 * if in doubt, the prefix is shorter than necessary.
+	 * 
+	 * @param regex The regular expression.
+	 * @return The literal characters every match of the expression starts with.
+	 */
+	static String literalPrefix(String regex)
+	{
+		// alternatives might start with anything
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			}
+			else if (c == '|') {
+				return "";
+			}
+		}
+		StringBuilder prefix = new StringBuilder();
+		// length of the prefix before the last single literal character
+		int previous = 0;
+		int i = regex.startsWith("^") ? 1 : 0;
+		loop:
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			switch (c) {
+			case '\\':
+				if (i+1 == regex.length()) {
+					break loop;
+				}
+				char n = regex.charAt(i+1);
+				if (n == 'Q') {
+					int end = regex.indexOf("\\E", i+2);
+					if (end < 0) {
+						end = regex.length();
+					}
+					previous = prefix.length() + Math.max(0, end-i-3);
+					prefix.append(regex, i+2, end);
+					i = end+2;
+				}
+				else if (!Character.isLetterOrDigit(n)) {
+					previous = prefix.length();
+					prefix.append(n);
+					i += 2;
+				}
+				else {
+					// character classes like \d, back references etc.
+					break loop;
+				}
+				break;
+			case '?':
+			case '*':
+			case '{':
+				// the last character is optional
+				prefix.setLength(previous);
+				break loop;
+			case '.':
+			case '[':
+			case '(':
+			case '+':
+			case '^':
+			case '$':
+				break loop;
+			default:
+				previous = prefix.length();
+				prefix.append(c);
+				i++;
+			}
+		}
+		return prefix.toString();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -0,0 +1,187 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set of {@link AutoConnector}s evaluated together. Instead of attaching every connector
+ * as a listener of its own (which runs the pattern of every connector for every registered
+ * node), attach the set. The set indexes the connectors by the literal prefixes of their
+ * input patterns (see {@link AutoConnector#getLiteralPrefix()}) in a character trie. For
+ * each registered name a single walk along the name yields the connectors whose prefix
+ * matches, and only the patterns of these connectors are evaluated. Connectors without a
+ * literal prefix (e.g. ".+") are evaluated for every name.
+ * Connectors are applied in the order they were added to the set, just like connectors
+ * attached as separate listeners in that order.
+ *
+ * @author agent
+ */
+public class AutoConnectorSet implements IStreamChangeListener
+{
+	/**
+	 * Node of the prefix trie. Children are sorted by their character.
+	 */
+	private static final class PrefixNode
+	{
+		char[] mKeys = new char[0];
+		PrefixNode[] mChildren = new PrefixNode[0];
+		// indices of the connectors with the prefix ending at this node
+		int[] mConnectors = new int[0];
+
+		PrefixNode child(char c)
+		{
+			int pos = Arrays.binarySearch(mKeys, c);
+			return pos < 0 ? null : mChildren[pos];
+		}
+
+		PrefixNode addChild(char c)
+		{
+			int pos = Arrays.binarySearch(mKeys, c);
+			if (pos >= 0) {
+				return mChildren[pos];
+			}
+			pos = -(pos+1);
+			char[] keys = new char[mKeys.length+1];
+			PrefixNode[] children = new PrefixNode[mChildren.length+1];
+			System.arraycopy(mKeys, 0, keys, 0, pos);
+			System.arraycopy(mChildren, 0, children, 0, pos);
+			keys[pos] = c;
+			children[pos] = new PrefixNode();
+			System.arraycopy(mKeys, pos, keys, pos+1, mKeys.length-pos);
+			System.arraycopy(mChildren, pos, children, pos+1, mChildren.length-pos);
+			mKeys = keys;
+			mChildren = children;
+			return children[pos];
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the connectors and their index.
+	 */
+	private static final class Index
+	{
+		final AutoConnector[] mConnectors;
+		final PrefixNode mRoot = new PrefixNode();
+
+		Index(AutoConnector[] connectors)
+		{
+			mConnectors = connectors;
+			for (int i = 0; i < connectors.length; i++) {
+				String prefix = connectors[i].getLiteralPrefix();
+				PrefixNode node = mRoot;
+				for (int j = 0; j < prefix.length(); j++) {
+					node = node.addChild(prefix.charAt(j));
+				}
+				int[] indices = new int[node.mConnectors.length+1];
+				System.arraycopy(node.mConnectors, 0, indices, 0, node.mConnectors.length);
+				indices[node.mConnectors.length] = i;
+				node.mConnectors = indices;
+			}
+		}
+	}
+
+	private volatile Index mIndex = new Index(new AutoConnector[0]);
+
+	/**
+	 * Add a connector to the set.
+	 *
+	 * @param connector The connector to add. It must not be attached to the {@link DatastreamManager} itself.
+	 */
+	public synchronized void add(AutoConnector connector)
+	{
+		AutoConnector[] current = mIndex.mConnectors;
+		AutoConnector[] connectors = new AutoConnector[current.length+1];
+		System.arraycopy(current, 0, connectors, 0, current.length);
+		connectors[current.length] = connector;
+		mIndex = new Index(connectors);
+	}
+
+	/**
+	 * Remove a connector from the set.
+	 *
+	 * @param connector The connector to remove.
+	 * @return true if the connector was removed, false if it was not part of the set.
+	 */
+	public synchronized boolean remove(AutoConnector connector)
+	{
+		List<AutoConnector> connectors = new ArrayList<AutoConnector>(Arrays.asList(mIndex.mConnectors));
+		if (!connectors.remove(connector)) {
+			return false;
+		}
+		mIndex = new Index(connectors.toArray(new AutoConnector[connectors.size()]));
+		return true;
+	}
+
+	/**
+	 * Get the number of connectors in the set.
+	 *
+	 * @return The number of connectors.
+	 */
+	public int size()
+	{
+		return mIndex.mConnectors.length;
+	}
+
+	@Override
+	public void registered(String name, INode<?> node)
+	{
+		Index index = mIndex;
+		boolean[] candidates = new boolean[index.mConnectors.length];
+		if (!findCandidates(index, name, candidates)) {
+			return;
+		}
+		for (int i = 0; i < candidates.length; i++) {
+			if (candidates[i]) {
+				index.mConnectors[i].registered(name, node);
+			}
+		}
+	}
+
+	@Override
+	public void unregistered(String name, INode<?> node)
+	{
+		// the connections are at the source node, which is thrown away just now
+	}
+
+	/**
+	 * Connect all existing nodes according to the rules of the connectors in the set. Unlike
+	 * calling {@link AutoConnector#connectExisting()} for every connector, the registered names
+	 * are only iterated once.
+	 */
+	public void connectExisting()
+	{
+		// copy the names as connectors might register new nodes
+		DatastreamManager manager = DatastreamManager.getInstance();
+		List<String> names = new ArrayList<String>(manager.getRegisteredNames());
+		for (String name : names) {
+			INode<?> n = manager.get(name);
+			if (n != null) {
+				registered(name, n);
+			}
+		}
+	}
+
+	/**
+	 * Mark the connectors whose literal prefix is a prefix of the name.
+	 *
+	 * @return true if there is at least one candidate, false otherwise.
+	 */
+	private static boolean findCandidates(Index index, String name, boolean[] candidates)
+	{
+		boolean found = false;
+		PrefixNode node = index.mRoot;
+		int i = 0;
+		while (node != null) {
+			for (int c : node.mConnectors) {
+				candidates[c] = true;
+				found = true;
+			}
+			if (i == name.length()) {
+				break;
+			}
+			node = node.child(name.charAt(i++));
+		}
+		return found;
+	}
+}
@@ -0,0 +1,193 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Notifier delivering observer notifications of nodes in coalesced form. Nodes attached to a
+ * notifier (see e.g. {@link de.tuilmenau.ics.CommonSim.datastream.numeric.AbstractDoubleNode#setNotifier(CoalescingNotifier)})
+ * do not call their observers on every write any more but just mark themselves dirty. A node
+ * that is dirty already only reads its flag; a node becoming dirty pushes itself onto a list of
+ * dirty nodes with a compare-and-set. The notifier then calls the observers of every dirty node
+ * once per delivery, no matter how many values were written in between, and only visits the
+ * nodes that actually changed. Observers reading the node on notification therefore see the
+ * latest value.
+ * Deliveries take place either periodically in a background thread (see
+ * {@link CoalescingNotifier#CoalescingNotifier(long, TimeUnit)}) or whenever
+ * {@link CoalescingNotifier#deliver()} is called, e.g. by the simulation at the end of
+ * every simulation time epoch. Observers of periodically delivering notifiers are called
+ * in the thread of the notifier, not in the writing thread.
+ *
+ * @author agent
+ */
+public class CoalescingNotifier
+{
+	/**
+	 * Dirty flag of a node attached to the notifier.
+	 */
+	public final class Slot
+	{
+		private final IObservable mSource;
+		private final CopyOnWriteArray<IObserver> mObservers;
+		private final AtomicBoolean mDirty = new AtomicBoolean();
+		private volatile boolean mAttached = true;
+		// next slot in the list of dirty slots (guarded by the list)
+		private Slot mNext;
+
+		Slot(IObservable source, CopyOnWriteArray<IObserver> observers)
+		{
+			mSource = source;
+			mObservers = observers;
+		}
+
+		/**
+		 * Mark the node as changed since the last delivery.
+		 */
+		public void mark()
+		{
+			if (!mDirty.get() && mDirty.compareAndSet(false, true)) {
+				push(this);
+			}
+		}
+
+		void deliver()
+		{
+			// clear before notifying so that changes during the notification are not lost
+			if (mDirty.compareAndSet(true, false)) {
+				notifyObservers();
+			}
+		}
+
+		void notifyObservers()
+		{
+			IObserver[] observers = mObservers.get();
+			for (int i = 0; i < observers.length; i++) {
+				observers[i].notify(mSource);
+			}
+		}
+	}
+
+	// the slots marked since the last delivery, latest first
+	private final AtomicReference<Slot> mDirty = new AtomicReference<Slot>();
+	private ScheduledExecutorService mTimer;
+
+	/**
+	 * Create a notifier delivering on calls to {@link CoalescingNotifier#deliver()} only.
+	 */
+	public CoalescingNotifier()
+	{
+	}
+
+	/**
+	 * Create a notifier delivering periodically in a background thread. Each observer
+	 * is notified at most once per interval.
+	 *
+	 * @param interval The time between two deliveries.
+	 * @param unit     The unit of the interval.
+	 */
+	public CoalescingNotifier(long interval, TimeUnit unit)
+	{
+		mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "datastream-notifier");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		mTimer.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					deliver();
+				}
+				catch (RuntimeException e) {
+					// TODO log warning message, a failing observer must not stop the notifier
+				}
+			}
+		}, interval, interval, unit);
+	}
+
+	/**
+	 * Attach a node to the notifier. This is to be called by node implementations only.
+	 *
+	 * @param source    The node whose observers are to be notified.
+	 * @param observers The observers of the node.
+	 * @return The slot the node marks when it changed.
+	 */
+	public Slot attach(IObservable source, CopyOnWriteArray<IObserver> observers)
+	{
+		return new Slot(source, observers);
+	}
+
+	/**
+	 * Detach a node from the notifier. Pending notifications of the node are delivered.
+	 *
+	 * @param slot The slot returned on attaching the node.
+	 */
+	public synchronized void detach(Slot slot)
+	{
+		if (slot.mAttached) {
+			slot.mAttached = false;
+			// the slot stays dirty until the next delivery drops it from the list
+			if (slot.mDirty.get()) {
+				slot.notifyObservers();
+			}
+		}
+	}
+
+	/**
+	 * Notify the observers of all nodes changed since the last delivery.
+	 */
+	public synchronized void deliver()
+	{
+		Slot list = mDirty.getAndSet(null);
+		// reverse the list to deliver in the order the nodes changed
+		Slot ordered = null;
+		while (list != null) {
+			Slot next = list.mNext;
+			list.mNext = ordered;
+			ordered = list;
+			list = next;
+		}
+		while (ordered != null) {
+			Slot slot = ordered;
+			ordered = slot.mNext;
+			slot.mNext = null;
+			if (slot.mAttached) {
+				slot.deliver();
+			}
+			else {
+				slot.mDirty.set(false);
+			}
+		}
+	}
+
+	private void push(Slot slot)
+	{
+		while (true) {
+			Slot head = mDirty.get();
+			slot.mNext = head;
+			if (mDirty.compareAndSet(head, slot)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stop periodic deliveries. Pending notifications are delivered one last time.
+	 */
+	public void stop()
+	{
+		if (mTimer != null) {
+			mTimer.shutdown();
+		}
+		deliver();
+	}
+}
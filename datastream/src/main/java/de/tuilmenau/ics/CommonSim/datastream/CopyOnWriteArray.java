@@ -0,0 +1,140 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free copy-on-write array used by the nodes to keep their successors and
+ * observers. Modifications copy the current array and publish the copy with a
+ * compare-and-set, while the write path of a node just reads the volatile
+ * array reference and iterates it. Readers therefore neither block nor allocate
+ * and never see a {@link java.util.ConcurrentModificationException}, even if
+ * another thread (e.g. a GUI attaching a chart) changes the array while the
+ * simulation is writing through the node. A change becomes visible with the
+ * next call to {@link CopyOnWriteArray#get()}.
+ * Elements are compared using equals, like the hash sets that were used before.
+ *
+ * @param <E> The type of the elements.
+ *
+ * @author agent
+ */
+public final class CopyOnWriteArray<E>
+{
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<CopyOnWriteArray, Object[]> sUpdater =
+			AtomicReferenceFieldUpdater.newUpdater(CopyOnWriteArray.class, Object[].class, "mElements");
+
+	private volatile Object[] mElements;
+
+	/**
+	 * Create an empty array.
+	 *
+	 * @param empty An empty array of the element type. It is used as the initial
+	 * 				value and determines the component type of all arrays returned
+	 * 				by {@link CopyOnWriteArray#get()}.
+	 */
+	public CopyOnWriteArray(E[] empty)
+	{
+		if (empty.length != 0) {
+			throw new IllegalArgumentException("Initial array must be empty.");
+		}
+		mElements = empty;
+	}
+
+	/**
+	 * Get the current elements. The returned array <em>MUST NOT</em> be modified.
+	 *
+	 * @return A snapshot of the elements in the order they were added.
+	 */
+	@SuppressWarnings("unchecked")
+	public E[] get()
+	{
+		return (E[])mElements;
+	}
+
+	/**
+	 * Add an element to the array.
+	 *
+	 * @param element The element to add.
+	 * @return true if the element was added, false if it was already contained.
+	 */
+	public boolean add(E element)
+	{
+		Object[] current;
+		Object[] next;
+		do {
+			current = mElements;
+			if (indexOf(current, element) >= 0) {
+				return false;
+			}
+			next = (Object[])Array.newInstance(current.getClass().getComponentType(), current.length+1);
+			System.arraycopy(current, 0, next, 0, current.length);
+			next[current.length] = element;
+		} while (!sUpdater.compareAndSet(this, current, next));
+		return true;
+	}
+
+	/**
+	 * Remove an element from the array.
+	 *
+	 * @param element The element to remove.
+	 * @return true if the element was removed, false if it was not contained.
+	 */
+	public boolean remove(Object element)
+	{
+		Object[] current;
+		Object[] next;
+		do {
+			current = mElements;
+			int idx = indexOf(current, element);
+			if (idx < 0) {
+				return false;
+			}
+			next = (Object[])Array.newInstance(current.getClass().getComponentType(), current.length-1);
+			System.arraycopy(current, 0, next, 0, idx);
+			System.arraycopy(current, idx+1, next, idx, current.length-idx-1);
+		} while (!sUpdater.compareAndSet(this, current, next));
+		return true;
+	}
+
+	/**
+	 * Check whether the given element is contained in the array.
+	 *
+	 * @param element The element to look for.
+	 * @return true if the element is contained, false otherwise.
+	 */
+	public boolean contains(Object element)
+	{
+		return indexOf(mElements, element) >= 0;
+	}
+
+	/**
+	 * Get the number of elements currently contained.
+	 *
+	 * @return The number of elements.
+	 */
+	public int size()
+	{
+		return mElements.length;
+	}
+
+	/**
+	 * Check whether the array is currently empty.
+	 *
+	 * @return true if there are no elements, false otherwise.
+	 */
+	public boolean isEmpty()
+	{
+		return mElements.length == 0;
+	}
+
+	private static int indexOf(Object[] elements, Object element)
+	{
+		for (int i = 0; i < elements.length; i++) {
+			if (element == null ? elements[i] == null : element.equals(elements[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -1,11 +1,19 @@
 package de.tuilmenau.ics.CommonSim.datastream;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import de.tuilmenau.ics.CommonSim.datastream.annotations.AutoWire;
 
@@ -13,23 +21,69 @@
  * Management interface of the data stream manager. This interface
  * contains all information necessary to create, retrieve and delete
  * data stream nodes. 
+ * The manager may be used from several threads at once. Lookups do not lock at all.
+ * Registrations allocate their handles atomically and only contend if they hit the same
+ * segment of the registry or of the name index (and never if they register different names
+ * at different segments), see {@link NameIndex}.
+ * By default there is one manager per process, returned by {@link DatastreamManager#getInstance()}.
+ * To run several independent simulations (e.g. replications) in one process, create a context
+ * per simulation via {@link DatastreamManager#createContext()} and bind it to the threads running
+ * the simulation via {@link DatastreamManager#bind(DatastreamManager)}. All static helpers
+ * (e.g. {@link DatastreamManager#open(Class, String)}, {@link DatastreamManager#autowire(Object)}
+ * and the <code>openAsWriter</code>/<code>openAsReader</code> methods of the nodes) resolve
+ * against the context bound to the calling thread. Numeric nodes keep the context they were
+ * created in: their writes follow the settings of that context (e.g. epoch mode) no matter
+ * which thread writes them.
  * 
  * @author Markus Brueckner
  */
 public class DatastreamManager 
 {
-	private static DatastreamManager sManager;
+	/**
+	 * Number of segments of the registry, i.e. the number of threads expected to register
+	 * nodes concurrently without contending.
+	 */
+	private static final int CONCURRENCY_LEVEL = 64;
 	
-	private Map<String, INode<?>> mNodes;
+	/**
+	 * Number of slots of the first chunk of the slot table. Each further chunk is twice
+	 * as large as the one before.
+	 */
+	private static final int CHUNK_SIZE = 256;
+	private static final int CHUNK_BITS = 8;
+	
+	private static volatile DatastreamManager sManager;
+	private static final ThreadLocal<DatastreamManager> sContext = new ThreadLocal<DatastreamManager>();
+	// number of threads having a context bound, so unbound threads skip the thread local
+	private static final AtomicInteger sBound = new AtomicInteger();
+	private static ExecutorService sDefaultExecutor;
+	
+	private ConcurrentMap<String, NodeHandle> mHandles;
+	private NameIndex mIndex;
+	private StreamGraph mGraph;
+	private volatile Epoch mEpoch;
+	// table of the handles indexed by their slots, made of chunks that are installed via CAS
+	// when needed and never copied
+	private final AtomicReferenceArray<AtomicReferenceArray<NodeHandle>> mSlots;
+	private final AtomicInteger mSlotCount = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Integer> mFreeSlots = new ConcurrentLinkedQueue<Integer>();
 	private List<IStreamChangeListener> mListeners;
+	private volatile boolean mCompiled;
+	private volatile boolean mIterativePropagation;
+	private volatile Executor mExecutor;
+	// incremented on every change of the nodes that operators built from them depend on
+	private final AtomicInteger mTopologyVersion = new AtomicInteger();
 	
 	/**
 	 * Constructor
 	 */
 	private DatastreamManager()
 	{
-		mNodes = new HashMap<String, INode<?>>();
-		mListeners = new ArrayList<IStreamChangeListener>();
+		mHandles = new ConcurrentHashMap<String, NodeHandle>(256, 0.75f, CONCURRENCY_LEVEL);
+		mSlots = new AtomicReferenceArray<AtomicReferenceArray<NodeHandle>>(32-CHUNK_BITS);
+		mIndex = new NameIndex(CONCURRENCY_LEVEL);
+		mGraph = new StreamGraph();
+		mListeners = new CopyOnWriteArrayList<IStreamChangeListener>();
 	}
 	
 	/**
@@ -44,7 +98,41 @@ private DatastreamManager()
 	 */
 	public INode<?> get(String id)
 	{
-		return mNodes.get(id);
+		NodeHandle handle = mHandles.get(id);
+		return handle == null ? null : handle.getNode();
+	}
+	
+	/**
+	 * Return the node referenced by the given handle. This is a plain array lookup.
+	 * 
+	 * @param handle The handle of the node as returned by {@link DatastreamManager#register(String, INode)},
+	 * 				{@link DatastreamManager#getHandle(String)} or {@link DatastreamManager#openHandle(Class, String)}.
+	 * @return The node registered with the handle. Returns null if the node was unregistered in the
+	 * 			meantime or the handle was issued by another manager.
+	 */
+	public INode<?> get(NodeHandle handle)
+	{
+		if (handle.getManager() != this) {
+			return null;
+		}
+		int slot = handle.getSlot();
+		int chunk = chunk(slot);
+		AtomicReferenceArray<NodeHandle> slots = mSlots.get(chunk);
+		if (slots == null || slots.get(slot-offset(chunk)) != handle) {
+			return null;
+		}
+		return handle.getNode();
+	}
+	
+	/**
+	 * Get the handle of the node registered under the given name.
+	 * 
+	 * @param id The name of the node.
+	 * @return The handle of the node or null if there is no node under that name.
+	 */
+	public NodeHandle getHandle(String id)
+	{
+		return mHandles.get(id);
 	}
 	
 	/**
@@ -53,16 +141,86 @@ public INode<?> get(String id)
 	 * @param id   The name to register the node under. If there is already a node under that
 	 *              name a StreamException is thrown.
 	 * @param node The node to register under the given name.
+	 * @return The handle of the node.
 	 */
-	public void register(String id, INode<?> node)
+	public NodeHandle register(String id, INode<?> node)
 	{
-		if (mNodes.containsKey(id)) {
+		NodeHandle handle = add(id, node);
+		if (handle.getNode() != node) {
 			throw new StreamException("Node under that name already registered in the stream manager.");
 		}
-		mNodes.put(id, node);
+		return handle;
+	}
+	
+	/**
+	 * Atomically register the given node unless there is already a node under that name.
+	 * Only the thread actually registering the node compiles it (if necessary) and notifies
+	 * the listeners.
+	 * 
+	 * @param id   The name to register the node under.
+	 * @param node The node to register.
+	 * @return The handle of the node registered under the name, which is the handle of the
+	 * 			given node if it was registered.
+	 */
+	private NodeHandle add(String id, INode<?> node)
+	{
+		NodeHandle existing = mHandles.get(id);
+		if (existing != null) {
+			return existing;
+		}
+		NodeHandle handle = new NodeHandle(this, allocateSlot(), id, node);
+		// the lock of the handle orders the updates of the index against an unregistration
+		synchronized (handle) {
+			existing = mHandles.putIfAbsent(id, handle);
+			if (existing != null) {
+				mFreeSlots.add(handle.getSlot());
+				return existing;
+			}
+			setSlot(handle.getSlot(), handle);
+			mIndex.add(id);
+			mGraph.add(node);
+		}
+		if (mCompiled && node instanceof ICompilable) {
+			((ICompilable)node).compile();
+		}
 		for (IStreamChangeListener l : mListeners) {
 			l.registered(id, node);
 		}
+		return handle;
+	}
+	
+	/**
+	 * Get a free slot, preferably one of an unregistered node.
+	 */
+	private int allocateSlot()
+	{
+		Integer slot = mFreeSlots.poll();
+		return slot != null ? slot : mSlotCount.getAndIncrement();
+	}
+	
+	private void setSlot(int slot, NodeHandle handle)
+	{
+		int chunk = chunk(slot);
+		AtomicReferenceArray<NodeHandle> slots = mSlots.get(chunk);
+		if (slots == null) {
+			mSlots.compareAndSet(chunk, null, new AtomicReferenceArray<NodeHandle>(CHUNK_SIZE << chunk));
+			slots = mSlots.get(chunk);
+		}
+		slots.set(slot-offset(chunk), handle);
+	}
+	
+	/**
+	 * Get the chunk of the slot table containing a slot. Chunk i starts at slot
+	 * CHUNK_SIZE*(2^i-1) and holds CHUNK_SIZE*2^i slots.
+	 */
+	private static int chunk(int slot)
+	{
+		return 31-Integer.numberOfLeadingZeros((slot >>> CHUNK_BITS)+1);
+	}
+	
+	private static int offset(int chunk)
+	{
+		return CHUNK_SIZE*((1 << chunk)-1);
 	}
 	
 	/**
@@ -73,34 +231,168 @@ public void register(String id, INode<?> node)
 	 */
 	public void unregister(String id)
 	{
-		INode<?> n = mNodes.remove(id);
-		if (n!=null) {
-			for (IStreamChangeListener l : mListeners) {
-				l.unregistered(id, n);
+		NodeHandle handle = mHandles.get(id);
+		if (handle == null) {
+			return;
+		}
+		synchronized (handle) {
+			// another thread might have unregistered the node in the meantime
+			if (mHandles.get(id) != handle) {
+				return;
 			}
+			mIndex.remove(id);
+			mGraph.remove(handle.getNode());
+			int slot = handle.getSlot();
+			mSlots.get(chunk(slot)).set(slot-offset(chunk(slot)), null);
+			// the name is free for new registrations from here on
+			mHandles.remove(id, handle);
+			mFreeSlots.add(slot);
+		}
+		for (IStreamChangeListener l : mListeners) {
+			l.unregistered(id, handle.getNode());
 		}
 	}
 
 	/**
 	 * Get all output nodes. Output nodes are considered nodes that
-	 * have no successors.
+	 * have no successors. The set is maintained on connect and disconnect,
+	 * so this call only touches the nodes returned.
 	 * 
 	 * @return A set of nodes having no successors
 	 */
 	public Set<INode<?>> getOutputs()
 	{
-		// TODO implement
-		return null;
+		return mGraph.getSinks();
+	}
+	
+	/**
+	 * Get the nodes a node is connected to.
+	 * 
+	 * @param node The node to get the successors of.
+	 * @return A snapshot of the nodes owning the writers the node is connected to. Writers not
+	 * 			belonging to a node are not contained.
+	 */
+	public Set<INode<?>> getSuccessors(INode<?> node)
+	{
+		return mGraph.getSuccessors(node);
+	}
+	
+	/**
+	 * Get the nodes connected to a node (i.e. to any of its inputs).
+	 * 
+	 * @param node The node to get the predecessors of.
+	 * @return A snapshot of the nodes connected to the node.
+	 */
+	public Set<INode<?>> getPredecessors(INode<?> node)
+	{
+		return mGraph.getPredecessors(node);
+	}
+	
+	/**
+	 * Get all nodes connected to a node directly or indirectly, no matter in which direction.
+	 * A component not containing any output of interest may be pruned as a whole.
+	 * 
+	 * @param node The node to get the component of.
+	 * @return A snapshot of the connected component including the node itself. The set is empty
+	 * 			if the node is unknown to the manager.
+	 */
+	public Set<INode<?>> getComponent(INode<?> node)
+	{
+		return mGraph.getComponent(node);
+	}
+	
+	/**
+	 * Get all connected components of the data stream graph.
+	 * 
+	 * @return A list of the components (see {@link DatastreamManager#getComponent(INode)}).
+	 */
+	public List<Set<INode<?>>> getComponents()
+	{
+		return mGraph.getComponents();
+	}
+	
+	/**
+	 * Notify the manager that a node was connected to a successor. This is to be called by
+	 * node implementations whenever a successor was actually added.
+	 * 
+	 * @param node      The node that was connected.
+	 * @param successor The writer the node was connected to.
+	 */
+	public void connected(INode<?> node, Object successor)
+	{
+		mGraph.connected(node, successor);
 	}
 	
 	/**
-	 * Get all registered names in the datastream manager. 
+	 * Notify the manager that a node was disconnected from a successor. This is to be called by
+	 * node implementations whenever a successor was actually removed.
+	 * 
+	 * @param node      The node that was disconnected.
+	 * @param successor The writer the node was disconnected from.
+	 */
+	public void disconnected(INode<?> node, Object successor)
+	{
+		mGraph.disconnected(node, successor);
+	}
+	
+	/**
+	 * Notify the manager that the topology of its nodes changed in a way operators built from
+	 * several nodes (e.g. fused chains) depend on, i.e. a node was connected, disconnected,
+	 * observed or switched to another mode. This is to be called by node implementations.
+	 */
+	public void topologyChanged()
+	{
+		mTopologyVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Get the version of the topology of the nodes of this manager. The version changes on
+	 * every call to {@link DatastreamManager#topologyChanged()}.
+	 * 
+	 * @return The current version.
+	 */
+	public int getTopologyVersion()
+	{
+		return mTopologyVersion.get();
+	}
+	
+	/**
+	 * Get all registered names in the datastream manager. The returned set is an unmodifiable
+	 * view of the registry. It may be iterated while other threads register or unregister nodes
+	 * and reflects some, all or none of these changes, but never throws a
+	 * {@link java.util.ConcurrentModificationException}.
 	 * 
 	 * @return A set of all registered names. Nodes without a registered name are not accessible in that way.
 	 */
 	public Set<String> getRegisteredNames()
 	{
-		return mNodes.keySet();
+		return Collections.unmodifiableSet(mHandles.keySet());
+	}
+	
+	/**
+	 * Get all registered names starting with the given prefix. The names are looked up in a
+	 * hierarchical index, so only the names below the prefix are visited. To get all nodes below
+	 * a node in the naming hierarchy, end the prefix with a '.' (e.g. "router.").
+	 * 
+	 * @param prefix The prefix of the names to return.
+	 * @return A snapshot of the names in lexicographical order.
+	 */
+	public List<String> getRegisteredNames(String prefix)
+	{
+		return mIndex.getNames(prefix);
+	}
+	
+	/**
+	 * Get all registered names matching the given wildcard pattern. '*' matches any number of
+	 * characters except '.', '**' any number of characters and '?' a single character except '.'
+	 * (e.g. "router.*.queue").
+	 * 
+	 * @param pattern The pattern the names have to match.
+	 * @return A snapshot of the matching names in lexicographical order.
+	 */
+	public List<String> findRegisteredNames(String pattern)
+	{
+		return mIndex.match(pattern);
 	}
 	
 	/**
@@ -110,9 +402,161 @@ public Set<String> getRegisteredNames()
 	 */
 	public void reset()
 	{
-		for (INode<?> n : mNodes.values()) {
-			n.reset();
+		for (NodeHandle h : mHandles.values()) {
+			h.getNode().reset();
+		}
+	}
+	
+	/**
+	 * Compile the data stream graph. All registered nodes supporting it prepare their
+	 * dispatch (see {@link ICompilable}) for the write path. The graph stays compiled:
+	 * nodes registered afterwards are compiled on registration and any connect/disconnect
+	 * updates the dispatch of the node concerned. Call this once the graph has been
+	 * set up (e.g. before starting the simulation).
+	 * Compiled nodes nobody consumes (no successors, no observers) are elided: they keep
+	 * their state but skip writing through and notifying until a consumer is attached.
+	 */
+	public void compile()
+	{
+		for (NodeHandle h : mHandles.values()) {
+			if (h.getNode() instanceof ICompilable) {
+				((ICompilable)h.getNode()).compile();
+			}
+		}
+		mCompiled = true;
+	}
+	
+	/**
+	 * Check whether the graph was compiled.
+	 * 
+	 * @return true if {@link DatastreamManager#compile()} was called, false otherwise.
+	 */
+	public boolean isCompiled()
+	{
+		return mCompiled;
+	}
+	
+	/**
+	 * Switch the epoch mode on or off. In epoch mode, nodes taking part (e.g. all numeric nodes)
+	 * buffer their changes with the same time and propagate them once, in topological order, when
+	 * a value with another time is written or {@link DatastreamManager#commitEpoch()} is called
+	 * (see {@link Epoch}). Switching the mode off commits the current epoch.
+	 * 
+	 * @param enabled true to switch epoch mode on, false to switch it off.
+	 */
+	public synchronized void setEpochMode(boolean enabled)
+	{
+		if (enabled) {
+			if (mEpoch == null) {
+				mEpoch = new Epoch(mGraph);
+			}
+		}
+		else if (mEpoch != null) {
+			Epoch epoch = mEpoch;
+			mEpoch = null;
+			epoch.commit();
+		}
+	}
+	
+	/**
+	 * Check whether the manager is in epoch mode.
+	 * 
+	 * @return true if epoch mode is switched on, false otherwise.
+	 */
+	public boolean isEpochMode()
+	{
+		return mEpoch != null;
+	}
+	
+	/**
+	 * Get the current epoch. This is to be used by node implementations taking part in epochs.
+	 * 
+	 * @return The current epoch or null if the manager is not in epoch mode.
+	 */
+	public Epoch getEpoch()
+	{
+		return mEpoch;
+	}
+	
+	/**
+	 * Commit the current epoch, i.e. propagate all changes buffered so far. Call this e.g. at
+	 * the end of a simulation run. Does nothing if the manager is not in epoch mode.
+	 */
+	public void commitEpoch()
+	{
+		Epoch epoch = mEpoch;
+		if (epoch != null) {
+			epoch.commit();
+		}
+	}
+	
+	/**
+	 * Switch the iterative propagation on or off. By default a node writes to its successors
+	 * directly, which write to their successors in turn, so the stack grows with the length
+	 * of the chains and the graph is traversed depth-first. With iterative propagation numeric
+	 * nodes append their writes to a work queue of the writing thread instead, which is drained
+	 * in a loop.
+	 * The stack depth is bounded independently of the length of the chains, and the graph is
+	 * traversed breadth-first. Batches, the groups of a parallel fan-out and object nodes
+	 * still write directly, so they take a stack frame per node, and in epoch mode the epoch
+	 * determines the order instead.
+	 * Note: with iterative propagation observers of a node are notified before its successors
+	 * received the value.
+	 * 
+	 * @param enabled true to switch iterative propagation on, false to switch it off.
+	 */
+	public void setIterativePropagation(boolean enabled)
+	{
+		mIterativePropagation = enabled;
+	}
+	
+	/**
+	 * Check whether writes are propagated iteratively.
+	 * 
+	 * @return true if iterative propagation is switched on, false otherwise.
+	 */
+	public boolean isIterativePropagation()
+	{
+		return mIterativePropagation;
+	}
+	
+	/**
+	 * Get the executor used by nodes that do work asynchronously (e.g. {@link de.tuilmenau.ics.CommonSim.datastream.numeric.AsyncDoubleNode})
+	 * if they are not given an executor explicitly. Unless set via {@link DatastreamManager#setExecutor(Executor)}
+	 * this is a shared pool of daemon threads.
+	 * 
+	 * @return The executor for asynchronous nodes.
+	 */
+	public Executor getExecutor()
+	{
+		if (mExecutor == null) {
+			synchronized (DatastreamManager.class) {
+				if (sDefaultExecutor == null) {
+					sDefaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) 
+						{
+							Thread t = new Thread(r, "datastream-worker");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+				}
+				mExecutor = sDefaultExecutor;
+			}
 		}
+		return mExecutor;
+	}
+	
+	/**
+	 * Set the executor used by nodes that do work asynchronously. Nodes created
+	 * before keep the executor they got on creation.
+	 * 
+	 * @param executor The executor to use (e.g. one running each task in a virtual thread).
+	 */
+	public void setExecutor(Executor executor)
+	{
+		mExecutor = executor;
 	}
 	
 	/**
@@ -139,6 +583,8 @@ public void detachListener(IStreamChangeListener listener)
 	/**
 	 * Open a node. This node is a generic version forsimplifying the implementation of static 
 	 * getters in the node implementations.
+	 * Opening is atomic: if several threads open the same id at once, all of them get the same
+	 * node and the listeners are notified only once. No lock is held while creating the node.
 	 * Note: This method is more targeted towards implementers of node types. They should provide
 	 * 			static creator methods of the form <code>openAsReader(String id)</code> and 
 	 * 			<code>openAsWriter(String id)</code> returning the fitting readers and writers for
@@ -160,17 +606,38 @@ public static <NodeType> NodeType open(Class<NodeType> cls, String id)
 	{
 		DatastreamManager m = getInstance();
 		Object n = m.get(id);
-		if (n != null) {
-			if (!cls.isAssignableFrom(n.getClass())) {
-				throw new ClassCastException("Node under id '"+id+"' of type '"+n.getClass().getCanonicalName()+"' is not compatible to the desired type '"+cls.getCanonicalName()+"'.");
-			}
-			return (NodeType)n;
+		if (n == null) {
+			// create a new node under the given name
+			NodeType tmp = create(cls);
+			n = m.add(id, (INode<?>)tmp).getNode();
+			// another thread might have been faster, then its node is used
+		}
+		if (!cls.isAssignableFrom(n.getClass())) {
+			throw new ClassCastException("Node under id '"+id+"' of type '"+n.getClass().getCanonicalName()+"' is not compatible to the desired type '"+cls.getCanonicalName()+"'.");
 		}
-		// create a new node under the given name
+		return (NodeType)n;
+	}
+	
+	/**
+	 * Open a node like {@link DatastreamManager#open(Class, String)} but return its handle. Producers
+	 * writing to dynamically named nodes should open them once this way and look them up via
+	 * {@link DatastreamManager#get(NodeHandle)} afterwards.
+	 * 
+	 * @param cls The class of the node to create in case the node does not exist.
+	 * @param id The unique id of the node.
+	 * @return The handle of the node existing under the given id.
+	 * @throws ClassCastException in case there is a node under that id but it is not of type cls.
+	 */
+	public static NodeHandle openHandle(Class<?> cls, String id)
+	{
+		open(cls, id);
+		return getInstance().getHandle(id);
+	}
+	
+	private static <NodeType> NodeType create(Class<NodeType> cls)
+	{
 		try {
-			NodeType tmp = cls.newInstance();
-			m.register(id, (INode<?>)tmp);
-			return tmp;
+			return cls.newInstance();
 		} 
 		catch (InstantiationException e) {
 			throw new RuntimeException("Could not create instance of type "+cls.getCanonicalName()+". Reason: '"+e.getMessage()+"'");
@@ -191,24 +658,18 @@ public static <NodeType> NodeType open(Class<NodeType> cls, String id)
 	 */
 	public static String getUniqueName(boolean toStringPrefix, String prefix, Object obj, String suffix)
 	{
-		String name = prefix;
+		StringBuilder name = new StringBuilder(64);
 
 		if(toStringPrefix) {
-			name = obj.toString() +"." +prefix;
-		} else {
-			name = prefix;
-		}
-
-		if (name != null) {
-			name += "."+Integer.toHexString(System.identityHashCode(obj));
-		}
-		else {
-			name = Integer.toHexString(System.identityHashCode(obj));
+			name.append(obj.toString()).append('.').append(prefix).append('.');
+		} else if (prefix != null) {
+			name.append(prefix).append('.');
 		}
+		name.append(Integer.toHexString(System.identityHashCode(obj)));
 		if ((suffix != null) && !"".equals(suffix)) {
-			name += "."+suffix;
+			name.append('.').append(suffix);
 		}
-		return name;
+		return name.toString();
 	}
 	
 	/**
@@ -296,10 +757,17 @@ public static void autowire(Object obj)
 	}
 	
 	/**
-	 * get the Singleton-instance of the datastream manager
+	 * get the Singleton-instance of the datastream manager, or the context bound to the
+	 * calling thread if there is one (see {@link DatastreamManager#bind(DatastreamManager)}).
 	 */
 	public static DatastreamManager getInstance()
 	{
+		if (sBound.get() != 0) {
+			DatastreamManager context = sContext.get();
+			if (context != null) {
+				return context;
+			}
+		}
 		if (sManager == null) {
 			synchronized(DatastreamManager.class) {
 				if (sManager == null) {
@@ -310,8 +778,87 @@ public static DatastreamManager getInstance()
 		return sManager;
 	}
 	
+	/**
+	 * Create a new, empty manager context independent of the process-wide manager and
+	 * all other contexts.
+	 * 
+	 * @return The new context. It is not bound to any thread yet.
+	 */
+	public static DatastreamManager createContext()
+	{
+		return new DatastreamManager();
+	}
+	
+	/**
+	 * Bind a context to the calling thread. Until it is unbound again, {@link DatastreamManager#getInstance()}
+	 * and all static helpers called by the thread use the context instead of the process-wide
+	 * manager. To bind a context for a scope, restore the previous one afterwards:
+	 * <pre>
+	 * DatastreamManager previous = DatastreamManager.bind(context);
+	 * try {
+	 *     ...
+	 * }
+	 * finally {
+	 *     DatastreamManager.bind(previous);
+	 * }
+	 * </pre>
+	 * Work a node hands to other threads (e.g. asynchronous nodes) runs in the context the node
+	 * was created or written in (see {@link DatastreamManager#inContext(Runnable)}).
+	 * 
+	 * @param context The context to bind or null to unbind the current one.
+	 * @return The context bound before or null if there was none.
+	 */
+	public static DatastreamManager bind(DatastreamManager context)
+	{
+		DatastreamManager previous = sContext.get();
+		if (context != null) {
+			if (previous == null) {
+				sBound.incrementAndGet();
+			}
+			sContext.set(context);
+		}
+		else if (previous != null) {
+			sContext.remove();
+			sBound.decrementAndGet();
+		}
+		return previous;
+	}
+	
+	/**
+	 * Wrap a task to run with this manager bound to the thread running it. Use this to hand
+	 * work to other threads (e.g. an executor) that has to use the same context as the caller.
+	 * 
+	 * @param task The task to run.
+	 * @return A task binding this manager, running the given task and restoring the previous binding.
+	 */
+	public Runnable inContext(final Runnable task)
+	{
+		return new Runnable() {
+			@Override
+			public void run()
+			{
+				DatastreamManager previous = bind(DatastreamManager.this);
+				try {
+					task.run();
+				}
+				finally {
+					bind(previous);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Discard the manager and all its nodes. If a context is bound to the calling thread,
+	 * it is replaced by a new, empty one. Otherwise the process-wide manager is discarded
+	 * and created anew on the next call to {@link DatastreamManager#getInstance()}.
+	 */
 	public static void clear()
 	{
+		if (sBound.get() != 0 && sContext.get() != null) {
+			sContext.set(new DatastreamManager());
+			return;
+		}
 		synchronized (DatastreamManager.class) {
 			sManager = null;
 		}
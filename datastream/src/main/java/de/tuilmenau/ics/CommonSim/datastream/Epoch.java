@@ -0,0 +1,162 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Epoch of the epoch mode of the {@link DatastreamManager} (see {@link DatastreamManager#setEpochMode(boolean)}).
+ * An epoch comprises all writes with the same time. Nodes taking part do not write through
+ * to their successors and observers within an epoch but just remember their latest value and
+ * defer the propagation. When the epoch ends (i.e. a value with another time is written or
+ * the epoch is committed explicitly), every changed node propagates its latest value once.
+ * The nodes are processed in topological order, so a node is only processed after all its
+ * predecessors changed in the epoch have been processed. Nodes having several inputs (e.g.
+ * {@link de.tuilmenau.ics.CommonSim.datastream.numeric.DivNode}) therefore emit one consistent
+ * value per time instead of an intermediate value per changed input.
+ * Note: as only the latest value of a node within an epoch is propagated, accumulating nodes
+ * (e.g. sums) downstream of a node written several times per epoch only see the last value.
+ *
+ * @author agent
+ */
+public final class Epoch
+{
+	/**
+	 * Interface implemented by nodes taking part in epochs.
+	 */
+	public interface Participant
+	{
+		/**
+		 * Propagate the changes deferred in the ending epoch. Called with the lock of the epoch held.
+		 */
+		void commitEpoch();
+	}
+
+	/**
+	 * Time of changes written without a time (i.e. with a null time object). They belong to
+	 * the open epoch and neither end it nor give it a time.
+	 */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	private final StreamGraph mGraph;
+	// changed nodes of the open epoch, ordered by their rank when committing
+	private final List<Participant> mPending = new ArrayList<Participant>();
+	private final PriorityQueue<Participant> mDirty;
+	private final Set<Participant> mQueued = new HashSet<Participant>();
+	private final Set<Participant> mCommitted = new HashSet<Participant>();
+	private Map<INode<?>, Integer> mRanks;
+	private boolean mOpen;
+	private boolean mCommitting;
+	private long mTime;
+
+	Epoch(StreamGraph graph)
+	{
+		mGraph = graph;
+		mDirty = new PriorityQueue<Participant>(64, new Comparator<Participant>() {
+			@Override
+			public int compare(Participant p1, Participant p2)
+			{
+				int r1 = rank(p1);
+				int r2 = rank(p2);
+				return r1 < r2 ? -1 : (r1 == r2 ? 0 : 1);
+			}
+		});
+	}
+
+	/**
+	 * Defer the propagation of a change of a node to the end of the epoch. If the time of the
+	 * change differs from the time of the current epoch, the current epoch is committed first.
+	 * Nodes have to call this with the lock of the epoch held and store their change only if
+	 * the call returns true.
+	 *
+	 * @param node      The node that changed.
+	 * @param timeNanos The time of the change in nanoseconds or {@link Epoch#NO_TIME}.
+	 * @return true if the change is deferred, false if the node has to propagate it immediately
+	 * 			(which is the case for nodes changed again while committing, e.g. on cycles).
+	 */
+	public synchronized boolean defer(Participant node, long timeNanos)
+	{
+		if (mCommitting) {
+			if (mCommitted.contains(node)) {
+				return false;
+			}
+		}
+		else if (mOpen && timeNanos != mTime && timeNanos != NO_TIME) {
+			commit();
+		}
+		if (!mCommitting && (!mOpen || timeNanos != NO_TIME)) {
+			mTime = timeNanos;
+			mOpen = true;
+		}
+		if (mQueued.add(node)) {
+			if (mCommitting) {
+				mDirty.add(node);
+			}
+			else {
+				mPending.add(node);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Commit the current epoch, propagating all deferred changes in topological order.
+	 */
+	public synchronized void commit()
+	{
+		if (mCommitting) {
+			return;
+		}
+		mCommitting = true;
+		try {
+			mRanks = mGraph.getRanks();
+			mDirty.addAll(mPending);
+			mPending.clear();
+			while (!mDirty.isEmpty()) {
+				Participant node = mDirty.poll();
+				mQueued.remove(node);
+				mCommitted.add(node);
+				node.commitEpoch();
+			}
+		}
+		finally {
+			mPending.clear();
+			mDirty.clear();
+			mQueued.clear();
+			mCommitted.clear();
+			mRanks = null;
+			mCommitting = false;
+			mOpen = false;
+		}
+	}
+
+	/**
+	 * Get the time of the current epoch.
+	 *
+	 * @return The time of the current epoch in nanoseconds. Only valid if the epoch is open.
+	 */
+	public synchronized long getTime()
+	{
+		return mTime;
+	}
+
+	/**
+	 * Check whether there are changes in the current epoch which were not committed yet.
+	 *
+	 * @return true if the epoch is open, false otherwise.
+	 */
+	public synchronized boolean isOpen()
+	{
+		return mOpen;
+	}
+
+	private int rank(Participant p)
+	{
+		Integer rank = mRanks.get(p);
+		return rank == null ? 0 : rank;
+	}
+}
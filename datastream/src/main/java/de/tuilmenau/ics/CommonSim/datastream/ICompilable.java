@@ -0,0 +1,26 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+/**
+ * Interface implemented by nodes that take part in compiling the data stream graph.
+ * Compiling prepares the dispatch of a node for the write path (e.g. by building flat
+ * dispatch tables of its successors and observers). Changes to the topology (connect,
+ * disconnect, registering observers) keep the dispatch of a compiled node up to date.
+ *
+ * @see DatastreamManager#compile()
+ * @author agent
+ */
+public interface ICompilable
+{
+	/**
+	 * Compile the dispatch of this node from its current successors and observers.
+	 * Calling this on an already compiled node rebuilds the dispatch.
+	 */
+	void compile();
+
+	/**
+	 * Check whether the node is compiled.
+	 *
+	 * @return true if the node was compiled, false otherwise.
+	 */
+	boolean isCompiled();
+}
@@ -0,0 +1,19 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+/**
+ * Interface implemented by writers representing an input of a node (e.g. the named inputs
+ * of nodes having more than one input). It maps the writer a node is connected to back to
+ * the node owning it, which is needed to track the topology of the data stream graph.
+ * Writers that are nodes themselves (e.g. simple nodes) need not implement this interface.
+ * 
+ * @author agent
+ */
+public interface INodeInput
+{
+	/**
+	 * Get the node this input belongs to.
+	 * 
+	 * @return The node owning the input.
+	 */
+	INode<?> getNode();
+}
@@ -0,0 +1,462 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Hierarchical index of node names. Node names are usually dotted hierarchies
+ * (e.g. "router.7f3a.queue" as created by {@link DatastreamManager#getUniqueName(boolean, String, Object, String)}).
+ * The index supports looking up all names starting with a prefix and all names matching a
+ * wildcard pattern without scanning all registered names. It is a radix tree: every edge
+ * carries the characters the names below it share, so a lookup only descends along the
+ * prefix and visits the names below it. The index is an addition to the registry of the
+ * {@link DatastreamManager}, which still keeps the names for lookups by exact name.
+ * In patterns, '*' matches any number of characters within a segment (i.e. except '.'),
+ * '**' any number of characters including '.' and '?' a single character except '.'.
+ * All methods are thread-safe. The names are spread over several trees by the hash code of
+ * their first segment (i.e. the part before the first '.'), each with a lock of its own, so
+ * adding and removing names only contend if their first segments fall into the same tree. A
+ * subtree of the hierarchy therefore lies in a single tree, and queries whose prefix spans the
+ * first segment only visit that tree. Other queries visit all trees and merge the results.
+ *
+ * @author agent
+ */
+public final class NameIndex
+{
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	/**
+	 * Node of the tree. The children are sorted by the first character of their labels,
+	 * which are pairwise different.
+	 */
+	private static final class Node
+	{
+		char[] mLabel;
+		Node[] mChildren = NO_CHILDREN;
+		boolean mTerminal;
+
+		Node(char[] label)
+		{
+			mLabel = label;
+		}
+
+		int find(char c)
+		{
+			int lo = 0;
+			int hi = mChildren.length-1;
+			while (lo <= hi) {
+				int mid = (lo+hi) >>> 1;
+				char m = mChildren[mid].mLabel[0];
+				if (m < c) {
+					lo = mid+1;
+				}
+				else if (m > c) {
+					hi = mid-1;
+				}
+				else {
+					return mid;
+				}
+			}
+			return -(lo+1);
+		}
+
+		void insert(int pos, Node child)
+		{
+			Node[] children = new Node[mChildren.length+1];
+			System.arraycopy(mChildren, 0, children, 0, pos);
+			children[pos] = child;
+			System.arraycopy(mChildren, pos, children, pos+1, mChildren.length-pos);
+			mChildren = children;
+		}
+
+		void delete(int pos)
+		{
+			Node[] children = mChildren.length == 1 ? NO_CHILDREN : new Node[mChildren.length-1];
+			System.arraycopy(mChildren, 0, children, 0, pos);
+			System.arraycopy(mChildren, pos+1, children, pos, mChildren.length-pos-1);
+			mChildren = children;
+		}
+	}
+
+	/**
+	 * One of the trees of the index.
+	 */
+	private static final class Tree
+	{
+		private final Node mRoot = new Node(new char[0]);
+		private int mSize;
+
+		/**
+		 * Add a name to the index.
+		 *
+		 * @param name The name to add.
+		 * @return true if the name was added, false if it was already contained.
+		 */
+		synchronized boolean add(String name)
+		{
+			Node node = mRoot;
+			int i = 0;
+			int len = name.length();
+			while (i < len) {
+				int pos = node.find(name.charAt(i));
+				if (pos < 0) {
+					Node leaf = new Node(name.substring(i).toCharArray());
+					leaf.mTerminal = true;
+					node.insert(-(pos+1), leaf);
+					mSize++;
+					return true;
+				}
+				Node child = node.mChildren[pos];
+				int k = common(child.mLabel, name, i);
+				if (k < child.mLabel.length) {
+					// split the edge at the first differing character
+					Node split = new Node(copy(child.mLabel, 0, k));
+					child.mLabel = copy(child.mLabel, k, child.mLabel.length);
+					split.mChildren = new Node[] { child };
+					node.mChildren[pos] = split;
+					child = split;
+				}
+				node = child;
+				i += k;
+			}
+			if (node.mTerminal) {
+				return false;
+			}
+			node.mTerminal = true;
+			mSize++;
+			return true;
+		}
+
+		/**
+		 * Remove a name from the index.
+		 *
+		 * @param name The name to remove.
+		 * @return true if the name was removed, false if it was not contained.
+		 */
+		synchronized boolean remove(String name)
+		{
+			if (remove(mRoot, name, 0)) {
+				mSize--;
+				return true;
+			}
+			return false;
+		}
+
+		private static boolean remove(Node node, String name, int i)
+		{
+			if (i == name.length()) {
+				if (!node.mTerminal) {
+					return false;
+				}
+				node.mTerminal = false;
+				return true;
+			}
+			int pos = node.find(name.charAt(i));
+			if (pos < 0) {
+				return false;
+			}
+			Node child = node.mChildren[pos];
+			int k = common(child.mLabel, name, i);
+			if (k < child.mLabel.length || !remove(child, name, i+k)) {
+				return false;
+			}
+			// keep the tree compressed
+			if (!child.mTerminal) {
+				if (child.mChildren.length == 0) {
+					node.delete(pos);
+				}
+				else if (child.mChildren.length == 1) {
+					Node grandChild = child.mChildren[0];
+					char[] label = new char[child.mLabel.length+grandChild.mLabel.length];
+					System.arraycopy(child.mLabel, 0, label, 0, child.mLabel.length);
+					System.arraycopy(grandChild.mLabel, 0, label, child.mLabel.length, grandChild.mLabel.length);
+					grandChild.mLabel = label;
+					node.mChildren[pos] = grandChild;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Check whether a name is contained in the index.
+		 *
+		 * @param name The name to look for.
+		 * @return true if the name is contained, false otherwise.
+		 */
+		synchronized boolean contains(String name)
+		{
+			Node node = mRoot;
+			int i = 0;
+			while (i < name.length()) {
+				int pos = node.find(name.charAt(i));
+				if (pos < 0) {
+					return false;
+				}
+				node = node.mChildren[pos];
+				int k = common(node.mLabel, name, i);
+				if (k < node.mLabel.length) {
+					return false;
+				}
+				i += k;
+			}
+			return node.mTerminal;
+		}
+
+		/**
+		 * Get the number of names in the index.
+		 *
+		 * @return The number of names.
+		 */
+		synchronized int size()
+		{
+			return mSize;
+		}
+
+		/**
+		 * Get all names starting with the given prefix, i.e. the names in the subtree below the
+		 * prefix. To get the names below a node in the hierarchy, end the prefix with a '.'.
+		 *
+		 * @param prefix The prefix of the names. The empty string returns all names.
+		 * @param result The list to add the names with the prefix to in lexicographical order.
+		 */
+		synchronized void getNames(String prefix, List<String> result)
+		{
+			StringBuilder path = new StringBuilder(prefix.length()+32);
+			Node node = mRoot;
+			int i = 0;
+			while (i < prefix.length()) {
+				int pos = node.find(prefix.charAt(i));
+				if (pos < 0) {
+					return;
+				}
+				node = node.mChildren[pos];
+				int k = common(node.mLabel, prefix, i);
+				if (k < node.mLabel.length && i+k < prefix.length()) {
+					return;
+				}
+				path.append(node.mLabel);
+				i += k;
+			}
+			collect(node, path, result);
+		}
+	}
+
+	/**
+	 * Default number of trees.
+	 */
+	private static final int DEFAULT_STRIPES = 16;
+
+	private final Tree[] mTrees;
+
+	/**
+	 * Create an index with the default number of trees.
+	 */
+	public NameIndex()
+	{
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Create an index.
+	 *
+	 * @param stripes The number of trees, i.e. the number of threads expected to add names
+	 * 				concurrently without contending. Rounded up to a power of two.
+	 */
+	public NameIndex(int stripes)
+	{
+		int n = 1;
+		while (n < stripes) {
+			n <<= 1;
+		}
+		mTrees = new Tree[n];
+		for (int i = 0; i < n; i++) {
+			mTrees[i] = new Tree();
+		}
+	}
+
+	/**
+	 * Get the tree holding the names with the same first segment as the given name.
+	 */
+	private Tree tree(String name)
+	{
+		int h = 0;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '.') {
+				break;
+			}
+			h = 31*h+c;
+		}
+		return mTrees[(h ^ (h >>> 16)) & (mTrees.length-1)];
+	}
+
+	/**
+	 * Add a name to the index.
+	 *
+	 * @param name The name to add.
+	 * @return true if the name was added, false if it was already contained.
+	 */
+	public boolean add(String name)
+	{
+		return tree(name).add(name);
+	}
+
+	/**
+	 * Remove a name from the index.
+	 *
+	 * @param name The name to remove.
+	 * @return true if the name was removed, false if it was not contained.
+	 */
+	public boolean remove(String name)
+	{
+		return tree(name).remove(name);
+	}
+
+	/**
+	 * Check whether a name is contained in the index.
+	 *
+	 * @param name The name to look for.
+	 * @return true if the name is contained, false otherwise.
+	 */
+	public boolean contains(String name)
+	{
+		return tree(name).contains(name);
+	}
+
+	/**
+	 * Get the number of names in the index.
+	 *
+	 * @return The number of names.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (int i = 0; i < mTrees.length; i++) {
+			size += mTrees[i].size();
+		}
+		return size;
+	}
+
+	/**
+	 * Get all names starting with the given prefix, i.e. the names in the subtrees below the
+	 * prefix. To get the names below a node in the hierarchy, end the prefix with a '.'.
+	 *
+	 * @param prefix The prefix of the names. The empty string returns all names.
+	 * @return The names with the prefix in lexicographical order.
+	 */
+	public List<String> getNames(String prefix)
+	{
+		List<String> result = new ArrayList<String>();
+		if (prefix.indexOf('.') >= 0) {
+			// all names with the prefix share its first segment
+			tree(prefix).getNames(prefix, result);
+			return result;
+		}
+		for (int i = 0; i < mTrees.length; i++) {
+			mTrees[i].getNames(prefix, result);
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Get all names matching the given wildcard pattern. Only the subtree below the part of
+	 * the pattern before the first wildcard is searched.
+	 *
+	 * @param pattern The pattern the names have to match (see {@link NameIndex}).
+	 * @return The matching names in lexicographical order.
+	 */
+	public List<String> match(String pattern)
+	{
+		int literal = 0;
+		while (literal < pattern.length() && pattern.charAt(literal) != '*' && pattern.charAt(literal) != '?') {
+			literal++;
+		}
+		if (literal == pattern.length()) {
+			List<String> result = new ArrayList<String>(1);
+			if (contains(pattern)) {
+				result.add(pattern);
+			}
+			return result;
+		}
+		List<String> result = getNames(pattern.substring(0, literal));
+		Pattern regex = compile(pattern);
+		List<String> matching = new ArrayList<String>();
+		for (String name : result) {
+			if (regex.matcher(name).matches()) {
+				matching.add(name);
+			}
+		}
+		return matching;
+	}
+
+	/**
+	 * Convert a wildcard pattern to a regular expression.
+	 *
+	 * @param pattern The wildcard pattern.
+	 * @return The compiled regular expression.
+	 */
+	static Pattern compile(String pattern)
+	{
+		StringBuilder regex = new StringBuilder(pattern.length()+16);
+		int literal = 0;
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '*' || c == '?') {
+				if (literal < i) {
+					regex.append(Pattern.quote(pattern.substring(literal, i)));
+				}
+				if (c == '?') {
+					regex.append("[^.]");
+				}
+				else if (i+1 < pattern.length() && pattern.charAt(i+1) == '*') {
+					regex.append(".*");
+					i++;
+				}
+				else {
+					regex.append("[^.]*");
+				}
+				literal = i+1;
+			}
+		}
+		if (literal < pattern.length()) {
+			regex.append(Pattern.quote(pattern.substring(literal)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	private static void collect(Node node, StringBuilder path, List<String> result)
+	{
+		if (node.mTerminal) {
+			result.add(path.toString());
+		}
+		int len = path.length();
+		for (Node child : node.mChildren) {
+			path.append(child.mLabel);
+			collect(child, path, result);
+			path.setLength(len);
+		}
+	}
+
+	/**
+	 * Get the length of the common prefix of a label and the name starting at the given offset.
+	 */
+	private static int common(char[] label, String name, int offset)
+	{
+		int max = Math.min(label.length, name.length()-offset);
+		int k = 0;
+		while (k < max && label[k] == name.charAt(offset+k)) {
+			k++;
+		}
+		return k;
+	}
+
+	private static char[] copy(char[] src, int from, int to)
+	{
+		char[] dst = new char[to-from];
+		System.arraycopy(src, from, dst, 0, to-from);
+		return dst;
+	}
+}
@@ -0,0 +1,65 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+/**
+ * Compact handle of a node registered at the {@link DatastreamManager}. A handle is an
+ * index into a dense array of the manager, so looking up a node via
+ * {@link DatastreamManager#get(NodeHandle)} neither builds nor hashes a name.
+ * Producers writing to dynamically named nodes should therefore resolve the name once
+ * (e.g. via {@link DatastreamManager#openHandle(Class, String)}) and keep the handle.
+ * A handle refers to one registration: once the node is unregistered the handle resolves
+ * to null, and registering a node under the same name again issues a new handle. Slots of
+ * unregistered nodes are reused. Handles are only valid for the manager that issued them.
+ *
+ * @author agent
+ */
+public final class NodeHandle
+{
+	private final DatastreamManager mManager;
+	private final int mSlot;
+	private final String mName;
+	private final INode<?> mNode;
+
+	NodeHandle(DatastreamManager manager, int slot, String name, INode<?> node)
+	{
+		mManager = manager;
+		mSlot = slot;
+		mName = name;
+		mNode = node;
+	}
+
+	/**
+	 * Get the slot of the node in the manager.
+	 *
+	 * @return The index of the node.
+	 */
+	public int getSlot()
+	{
+		return mSlot;
+	}
+
+	/**
+	 * Get the name the node is registered under.
+	 *
+	 * @return The name of the node.
+	 */
+	public String getName()
+	{
+		return mName;
+	}
+
+	DatastreamManager getManager()
+	{
+		return mManager;
+	}
+
+	INode<?> getNode()
+	{
+		return mNode;
+	}
+
+	@Override
+	public String toString()
+	{
+		return mName+"#"+mSlot;
+	}
+}
@@ -0,0 +1,29 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+/**
+ * Behaviour of a bounded queue (e.g. in front of an asynchronous node) when a
+ * producer writes into it while it is full.
+ * 
+ * @author agent
+ */
+public enum OverflowPolicy 
+{
+	/**
+	 * The producer blocks until the consumer has made room in the queue. No values are lost.
+	 */
+	BLOCK,
+	/**
+	 * The oldest value in the queue is dropped to make room for the new one.
+	 */
+	DROP_OLDEST,
+	/**
+	 * The new value is dropped, leaving the queue untouched.
+	 */
+	DROP_NEWEST,
+	/**
+	 * The new value replaces the newest value in the queue. The consumer then sees
+	 * a sample of the values written while the queue was full, but always gets the
+	 * most recent one.
+	 */
+	SAMPLE
+}
@@ -0,0 +1,361 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Topology of the data stream graph as seen by the {@link DatastreamManager}. Nodes report
+ * every connect and disconnect, and the graph keeps the successors and predecessors of each
+ * node as well as the set of nodes without successors up to date. Queries therefore only
+ * touch the nodes they return instead of scanning all nodes.
+ * Successors are tracked on node level: a writer a node is connected to is mapped to its
+ * node (see {@link INodeInput}). Writers not belonging to any node count as successors when
+ * determining the outputs but do not appear in the graph otherwise. The same holds for
+ * nodes not added to the graph (i.e. not registered) or removed from it while other nodes
+ * are still connected to them. Only registered nodes get a vertex, connections made by
+ * nodes that are not registered are not recorded.
+ * Adding a node (i.e. registering it) does not take the lock of the graph, so registrations
+ * do not contend with each other or with changes of the topology. Membership in the set of
+ * sinks is updated under the lock of the vertex concerned.
+ *
+ * @author agent
+ */
+final class StreamGraph
+{
+	/**
+	 * Adjacency of a node. The maps count the edges to each neighbour as a node may be
+	 * connected to several inputs of another node.
+	 */
+	private static final class Vertex
+	{
+		Map<INode<?>, Integer> mSuccessors;
+		Map<INode<?>, Integer> mPredecessors;
+		int mExternal;
+		// number of names the node is registered under
+		int mRegistrations;
+
+		boolean isSink()
+		{
+			return mExternal == 0 && (mSuccessors == null || mSuccessors.isEmpty());
+		}
+	}
+
+	private final ConcurrentMap<INode<?>, Vertex> mVertices = new ConcurrentHashMap<INode<?>, Vertex>(256, 0.75f, 64);
+	private final Set<INode<?>> mSinks = Collections.newSetFromMap(new ConcurrentHashMap<INode<?>, Boolean>(256, 0.75f, 64));
+	// incremented on every change of the topology
+	private final AtomicInteger mVersion = new AtomicInteger();
+	private Map<INode<?>, Integer> mRanks;
+	private int mRanksVersion;
+
+	/**
+	 * Get the node a writer belongs to.
+	 *
+	 * @param writer The writer a node was connected to.
+	 * @return The node owning the writer or null if it does not belong to a node.
+	 */
+	static INode<?> owner(Object writer)
+	{
+		if (writer instanceof INodeInput) {
+			return ((INodeInput)writer).getNode();
+		}
+		if (writer instanceof INode) {
+			return (INode<?>)writer;
+		}
+		return null;
+	}
+
+	/**
+	 * Add a node to the graph (e.g. on registration).
+	 */
+	void add(INode<?> node)
+	{
+		while (true) {
+			Vertex v = vertex(node);
+			synchronized (v) {
+				// the vertex might have been removed in the meantime
+				if (mVertices.get(node) == v) {
+					v.mRegistrations++;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove a node from the graph (e.g. on unregistration) once it is no longer registered
+	 * under any name. The edges from and to the node are dropped. Nodes still connected to
+	 * the node keep it as a successor outside the graph, so they do not become outputs.
+	 */
+	synchronized void remove(INode<?> node)
+	{
+		Vertex v = mVertices.get(node);
+		if (v == null) {
+			return;
+		}
+		synchronized (v) {
+			if (--v.mRegistrations > 0) {
+				return;
+			}
+			mVertices.remove(node);
+			mSinks.remove(node);
+		}
+		mVersion.incrementAndGet();
+		if (v.mSuccessors != null) {
+			for (INode<?> succ : v.mSuccessors.keySet()) {
+				Vertex to = mVertices.get(succ);
+				if (to != null) {
+					to.mPredecessors.remove(node);
+				}
+			}
+		}
+		if (v.mPredecessors != null) {
+			for (Map.Entry<INode<?>, Integer> e : v.mPredecessors.entrySet()) {
+				Vertex from = mVertices.get(e.getKey());
+				if (from != null) {
+					from.mSuccessors.remove(node);
+					from.mExternal += e.getValue();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get the topological ranks of the nodes. The rank of a node is the length of the longest
+	 * path leading to it, so every node has a higher rank than all its predecessors. Nodes
+	 * on cycles get a rank higher than all nodes not depending on the cycle. The ranks are
+	 * computed once per change of the topology.
+	 * 
+	 * @return The ranks of all nodes known to the graph. The map <em>MUST NOT</em> be modified.
+	 */
+	synchronized Map<INode<?>, Integer> getRanks()
+	{
+		int version = mVersion.get();
+		if (mRanks == null || mRanksVersion != version) {
+			// nodes added concurrently have no edges yet and are ranked on the next call
+			List<INode<?>> nodes = new ArrayList<INode<?>>(mVertices.keySet());
+			Map<INode<?>, Integer> ranks = new HashMap<INode<?>, Integer>(nodes.size()*2);
+			Map<INode<?>, Integer> inDegree = new HashMap<INode<?>, Integer>(nodes.size()*2);
+			Deque<INode<?>> queue = new ArrayDeque<INode<?>>();
+			for (INode<?> node : nodes) {
+				Vertex v = mVertices.get(node);
+				int degree = v.mPredecessors == null ? 0 : v.mPredecessors.size();
+				inDegree.put(node, degree);
+				if (degree == 0) {
+					ranks.put(node, 0);
+					queue.add(node);
+				}
+			}
+			int max = 0;
+			while (!queue.isEmpty()) {
+				INode<?> node = queue.poll();
+				int rank = ranks.get(node);
+				max = Math.max(max, rank);
+				Vertex v = mVertices.get(node);
+				if (v.mSuccessors == null) {
+					continue;
+				}
+				for (INode<?> succ : v.mSuccessors.keySet()) {
+					Integer r = ranks.get(succ);
+					if (r == null || r <= rank) {
+						ranks.put(succ, rank+1);
+					}
+					int degree = inDegree.get(succ)-1;
+					inDegree.put(succ, degree);
+					if (degree == 0) {
+						queue.add(succ);
+					}
+				}
+			}
+			// nodes on (or behind) cycles
+			for (INode<?> node : nodes) {
+				if (inDegree.get(node) > 0) {
+					ranks.put(node, max+1);
+				}
+			}
+			mRanks = ranks;
+			mRanksVersion = version;
+		}
+		return mRanks;
+	}
+
+	/**
+	 * Record that a node was connected to a writer.
+	 */
+	synchronized void connected(INode<?> node, Object writer)
+	{
+		Vertex from = mVertices.get(node);
+		if (from == null) {
+			return;
+		}
+		mVersion.incrementAndGet();
+		INode<?> target = owner(writer);
+		Vertex to = target == null ? null : mVertices.get(target);
+		if (to == null) {
+			from.mExternal++;
+		}
+		else {
+			if (from.mSuccessors == null) {
+				from.mSuccessors = new HashMap<INode<?>, Integer>(4);
+			}
+			if (to.mPredecessors == null) {
+				to.mPredecessors = new HashMap<INode<?>, Integer>(4);
+			}
+			increment(from.mSuccessors, target);
+			increment(to.mPredecessors, node);
+		}
+		synchronized (from) {
+			mSinks.remove(node);
+		}
+	}
+
+	/**
+	 * Record that a node was disconnected from a writer.
+	 */
+	synchronized void disconnected(INode<?> node, Object writer)
+	{
+		Vertex from = mVertices.get(node);
+		if (from == null) {
+			return;
+		}
+		mVersion.incrementAndGet();
+		INode<?> target = owner(writer);
+		if (target != null && from.mSuccessors != null && from.mSuccessors.containsKey(target)) {
+			decrement(from.mSuccessors, target);
+			decrement(mVertices.get(target).mPredecessors, node);
+		}
+		else if (from.mExternal > 0) {
+			// the target is not a node, is not registered or was removed while connected
+			from.mExternal--;
+		}
+		synchronized (from) {
+			if (from.isSink()) {
+				mSinks.add(node);
+			}
+		}
+	}
+
+	synchronized Set<INode<?>> getSuccessors(INode<?> node)
+	{
+		Vertex v = mVertices.get(node);
+		return snapshot(v == null ? null : v.mSuccessors);
+	}
+
+	synchronized Set<INode<?>> getPredecessors(INode<?> node)
+	{
+		Vertex v = mVertices.get(node);
+		return snapshot(v == null ? null : v.mPredecessors);
+	}
+
+	Set<INode<?>> getSinks()
+	{
+		return Collections.unmodifiableSet(new LinkedHashSet<INode<?>>(mSinks));
+	}
+
+	/**
+	 * Get the weakly connected component of a node, i.e. all nodes reachable from the node
+	 * when ignoring the direction of the edges.
+	 */
+	synchronized Set<INode<?>> getComponent(INode<?> node)
+	{
+		Set<INode<?>> component = new LinkedHashSet<INode<?>>();
+		if (mVertices.containsKey(node)) {
+			collect(node, component);
+		}
+		return Collections.unmodifiableSet(component);
+	}
+
+	/**
+	 * Get all weakly connected components of the graph.
+	 */
+	synchronized List<Set<INode<?>>> getComponents()
+	{
+		List<Set<INode<?>>> components = new ArrayList<Set<INode<?>>>();
+		Set<INode<?>> visited = new HashSet<INode<?>>(mVertices.size()*2);
+		for (INode<?> node : mVertices.keySet()) {
+			if (!visited.contains(node)) {
+				Set<INode<?>> component = new LinkedHashSet<INode<?>>();
+				collect(node, component);
+				visited.addAll(component);
+				components.add(Collections.unmodifiableSet(component));
+			}
+		}
+		return components;
+	}
+
+	private void collect(INode<?> start, Set<INode<?>> component)
+	{
+		Deque<INode<?>> queue = new ArrayDeque<INode<?>>();
+		component.add(start);
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			Vertex v = mVertices.get(queue.poll());
+			if (v.mSuccessors != null) {
+				for (INode<?> n : v.mSuccessors.keySet()) {
+					if (component.add(n)) {
+						queue.add(n);
+					}
+				}
+			}
+			if (v.mPredecessors != null) {
+				for (INode<?> n : v.mPredecessors.keySet()) {
+					if (component.add(n)) {
+						queue.add(n);
+					}
+				}
+			}
+		}
+	}
+
+	private Vertex vertex(INode<?> node)
+	{
+		Vertex v = mVertices.get(node);
+		if (v == null) {
+			Vertex created = new Vertex();
+			synchronized (created) {
+				v = mVertices.putIfAbsent(node, created);
+				if (v == null) {
+					v = created;
+					mVersion.incrementAndGet();
+					mSinks.add(node);
+				}
+			}
+		}
+		return v;
+	}
+
+	private static Set<INode<?>> snapshot(Map<INode<?>, Integer> neighbours)
+	{
+		if (neighbours == null || neighbours.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new LinkedHashSet<INode<?>>(neighbours.keySet()));
+	}
+
+	private static void increment(Map<INode<?>, Integer> counts, INode<?> node)
+	{
+		Integer c = counts.get(node);
+		counts.put(node, c == null ? 1 : c+1);
+	}
+
+	private static void decrement(Map<INode<?>, Integer> counts, INode<?> node)
+	{
+		Integer c = counts.get(node);
+		if (c == null || c <= 1) {
+			counts.remove(node);
+		}
+		else {
+			counts.put(node, c-1);
+		}
+	}
+}
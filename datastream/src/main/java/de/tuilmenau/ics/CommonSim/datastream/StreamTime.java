@@ -45,6 +45,18 @@ public StreamTime(double seconds)
 		super(seconds);
 	}
 
+	/**
+	 * Create a new time object from a time given in nanoseconds. Nodes use this to
+	 * materialize times written as primitive values only when they are actually read.
+	 * 
+	 * @param nanos The time in nanoseconds.
+	 * @return A new time object representing the given time.
+	 */
+	public static StreamTime fromNanos(long nanos)
+	{
+		return new StreamTime(0,0,0,0,0,nanos);
+	}
+
 	@Override
 	public StreamTime newInstance(long hours, long minutes, long seconds,
 		long millis, long micros, long nanos) {
@@ -67,7 +67,27 @@ public T subtract(T o) {
 	 * @return The current time in seconds.
 	 */
 	public double toSeconds() {
-		return ((double) mTimeStamp) / 1000000000L;
+		return toSeconds(mTimeStamp);
+	}
+	
+	/**
+	 * Get the time in nanoseconds. This is the primitive representation of the time used
+	 * by the allocation-free write path of the nodes (see {@link de.tuilmenau.ics.CommonSim.datastream.numeric.IPrimitiveDoubleWriter#write(double, long)}).
+	 * 
+	 * @return The time in nanoseconds.
+	 */
+	public long toNanos() {
+		return mTimeStamp;
+	}
+	
+	/**
+	 * Convert a time given in nanoseconds to seconds (as double).
+	 * 
+	 * @param nanos The time in nanoseconds.
+	 * @return The time in seconds.
+	 */
+	public static double toSeconds(long nanos) {
+		return ((double) nanos) / 1000000000L;
 	}
 
 	/**
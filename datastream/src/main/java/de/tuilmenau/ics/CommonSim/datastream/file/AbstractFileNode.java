@@ -9,10 +9,12 @@
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
 import de.tuilmenau.ics.CommonSim.datastream.INode;
+import de.tuilmenau.ics.CommonSim.datastream.INodeInput;
 import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
-import de.tuilmenau.ics.CommonSim.datastream.numeric.IDoubleWriter;
-import de.tuilmenau.ics.CommonSim.datastream.object.IObjectWriter;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.IPrimitiveDoubleWriter;
+import de.tuilmenau.ics.CommonSim.datastream.object.IBatchObjectWriter;
 
 /**
  * Class implementing an output node that writes the values to a file.
@@ -35,7 +37,7 @@ public abstract class AbstractFileNode implements INode<Object> // deriving from
 	/**
 	 * Helper class providing a binding between a name and an input
 	 */
-	protected class NamedInput implements IDoubleWriter, IObjectWriter<Object>
+	protected class NamedInput implements IPrimitiveDoubleWriter, IBatchObjectWriter<Object>, INodeInput
 	{
 		private String mName;
 		
@@ -49,6 +51,12 @@ public NamedInput(String name)
 			mName = name;
 		}
 		
+		@Override
+		public INode<?> getNode() 
+		{
+			return AbstractFileNode.this;
+		}
+		
 		@Override
 		public void tick(TimeBase<?> time) 
 		{
@@ -61,11 +69,31 @@ public void write(double value, TimeBase<?> time)
 			AbstractFileNode.this.doWrite(mName, value, time);
 		}
 		
+		@Override
+		public void write(double value, long timeNanos) 
+		{
+			AbstractFileNode.this.doWrite(mName, value, timeNanos);
+		}
+		
+		@Override
+		public void writeBatch(double[] values, long[] times, int off, int len) 
+		{
+			AbstractFileNode.this.doWriteBatch(mName, values, times, off, len);
+		}
+		
 		@Override
 		public void write(Object value, TimeBase<?> time) 
 		{
 			AbstractFileNode.this.doWrite(mName, value, time);
 		}
+		
+		@Override
+		public void writeBatch(Object[] values, long[] times, int off, int len) 
+		{
+			for (int i = off; i < off+len; i++) {
+				AbstractFileNode.this.doWrite(mName, values[i], StreamTime.fromNanos(times[i]));
+			}
+		}
 	}
 	
 	protected AbstractFileNode()
@@ -172,6 +200,39 @@ public NamedInput getInput(String name)
 	 */
 	protected abstract void doWrite(String name, double value, TimeBase<?> t);
 
+	/**
+	 * Function implementing the writing process of double values with a primitive
+	 * time. The default implementation creates a time object and calls
+	 * {@link AbstractFileNode#doWrite(String, double, TimeBase)}. Classes deriving
+	 * from this class may override it to write the time directly.
+	 * 
+	 * @param name      The name of the input that received the value.
+	 * @param value     The value that was given at this input.
+	 * @param timeNanos The time at which the value was written in nanoseconds.
+	 */
+	protected void doWrite(String name, double value, long timeNanos)
+	{
+		doWrite(name, value, StreamTime.fromNanos(timeNanos));
+	}
+	
+	/**
+	 * Function implementing the writing process of a batch of double values. The default
+	 * implementation writes the values one by one using {@link AbstractFileNode#doWrite(String, double, long)}.
+	 * Classes deriving from this class may override it to write whole batches at once.
+	 * 
+	 * @param name   The name of the input that received the values.
+	 * @param values The values that were given at this input.
+	 * @param times  The times of the values in nanoseconds.
+	 * @param off    The index of the first value in both arrays.
+	 * @param len    The number of values.
+	 */
+	protected void doWriteBatch(String name, double[] values, long[] times, int off, int len)
+	{
+		for (int i = off; i < off+len; i++) {
+			doWrite(name, values[i], times[i]);
+		}
+	}
+
 	/**
 	 * Function implementing the actual writing process. Classes
 	 * deriving from this class implement this method to do the actual
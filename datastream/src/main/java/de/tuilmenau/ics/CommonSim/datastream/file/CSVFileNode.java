@@ -22,6 +22,25 @@ protected void doWrite(String name, double value, TimeBase<?> t)
 		((PrintWriter)getWriter()).format("%s;\"%s\";%s\n", Double.toString(t.toSeconds()), name, Double.toString(value));
 	}
 
+	@Override
+	protected void doWrite(String name, double value, long timeNanos) 
+	{
+		((PrintWriter)getWriter()).format("%s;\"%s\";%s\n", Double.toString(TimeBase.toSeconds(timeNanos)), name, Double.toString(value));
+	}
+
+	/**
+	 * Formats the whole batch into one buffer and hands it to the underlying writer at once.
+	 */
+	@Override
+	protected void doWriteBatch(String name, double[] values, long[] times, int off, int len) 
+	{
+		StringBuilder lines = new StringBuilder(len*(name.length()+32));
+		for (int i = off; i < off+len; i++) {
+			lines.append(TimeBase.toSeconds(times[i])).append(";\"").append(name).append("\";").append(values[i]).append('\n');
+		}
+		((PrintWriter)getWriter()).append(lines);
+	}
+
 	@Override
 	protected void doWrite(String name, Object value, TimeBase<?> t) 
 	{
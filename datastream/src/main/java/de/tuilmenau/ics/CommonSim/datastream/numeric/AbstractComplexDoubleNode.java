@@ -1,10 +1,14 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.INode;
+import de.tuilmenau.ics.CommonSim.datastream.INodeInput;
 import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
@@ -18,6 +22,8 @@ public abstract class AbstractComplexDoubleNode extends AbstractDoubleNode
 {
 	Map<String, IDoubleWriter> mInputs;
 	String[] mInputsCache;
+	// lazy sources of inputs invalidated since the last read
+	private Map<String, IDoubleReader> mPending;
 	
 	@Override
 	public String[] getInputNames() 
@@ -33,7 +39,7 @@ public String[] getInputNames()
 	/**
 	 * Helper class providing a binding between a name and an input
 	 */
-	protected class NamedInput implements IDoubleWriter
+	protected class NamedInput implements ILazyDoubleWriter, IPrimitiveDoubleWriter, INodeInput
 	{
 		private String mName;
 		
@@ -47,6 +53,20 @@ public NamedInput(String name)
 			mName = name;
 		}
 		
+		@Override
+		public INode<?> getNode() 
+		{
+			return AbstractComplexDoubleNode.this;
+		}
+		
+		/**
+		 * Get the name of the input.
+		 */
+		String getName()
+		{
+			return mName;
+		}
+		
 		@Override
 		public void tick(TimeBase<?> time) 
 		{
@@ -56,8 +76,35 @@ public void tick(TimeBase<?> time)
 		@Override
 		public void write(double value, TimeBase<?> time) 
 		{
+			clearPending(mName);
 			AbstractComplexDoubleNode.this.doWrite(mName, value, time);
 		}
+		
+		@Override
+		public void write(double value, long timeNanos) 
+		{
+			clearPending(mName);
+			AbstractComplexDoubleNode.this.doWrite(mName, value, timeNanos);
+		}
+		
+		@Override
+		public void writeBatch(double[] values, long[] times, int off, int len) 
+		{
+			clearPending(mName);
+			AbstractComplexDoubleNode.this.doWriteBatch(mName, values, times, off, len);
+		}
+		
+		@Override
+		public boolean acceptsInvalidation() 
+		{
+			return AbstractComplexDoubleNode.this.acceptsInvalidation();
+		}
+		
+		@Override
+		public void invalidate(IDoubleReader source) 
+		{
+			AbstractComplexDoubleNode.this.doInvalidate(mName, source);
+		}
 	}
 	
 	/**
@@ -112,6 +159,105 @@ protected void addInput(String name)
 	 */
 	protected abstract void doWrite(String name, double value, TimeBase<?> time);
 	
+	/**
+	 * Method receiving a value with a primitive time from a named input. The default
+	 * implementation creates a time object and calls {@link AbstractComplexDoubleNode#doWrite(String, double, TimeBase)}.
+	 * Implementers able to handle the primitive time directly should override this method.
+	 * 
+	 * @param name      The name of the input where the value came from.
+	 * @param value     The value itself.
+	 * @param timeNanos The time at which the value was received in nanoseconds.
+	 */
+	protected void doWrite(String name, double value, long timeNanos)
+	{
+		doWrite(name, value, StreamTime.fromNanos(timeNanos));
+	}
+	
+	/**
+	 * Method receiving a batch of values from a named input. The default implementation
+	 * hands the values one by one to {@link AbstractComplexDoubleNode#doWrite(String, double, long)}.
+	 * Implementers able to process whole batches should override this method.
+	 * 
+	 * @param name   The name of the input where the values came from.
+	 * @param values The values.
+	 * @param times  The times of the values in nanoseconds.
+	 * @param off    The index of the first value in both arrays.
+	 * @param len    The number of values.
+	 */
+	protected void doWriteBatch(String name, double[] values, long[] times, int off, int len)
+	{
+		for (int i = off; i < off+len; i++) {
+			doWrite(name, values[i], times[i]);
+		}
+	}
+	
+	/**
+	 * Check whether the inputs accept invalidations by lazy sources instead of values (see
+	 * {@link ILazyDoubleWriter}). The default implementation returns false, so the inputs get
+	 * every value written. Nodes only depending on the latest values of their inputs opt in
+	 * by returning {@link AbstractDoubleNode#isLazy()}.
+	 * 
+	 * @return true if the inputs are to be invalidated, false if they are to be written.
+	 */
+	protected boolean acceptsInvalidation()
+	{
+		return false;
+	}
+	
+	/**
+	 * Method receiving the invalidation of a named input by a lazy source (see {@link ILazyDoubleWriter}).
+	 * The default implementation remembers the source until the node is read (see
+	 * {@link AbstractComplexDoubleNode#pull()}) and propagates the invalidation.
+	 * 
+	 * @param name   The name of the invalidated input.
+	 * @param source The node holding the new value of the input.
+	 */
+	protected void doInvalidate(String name, IDoubleReader source)
+	{
+		if (mPending == null) {
+			mPending = new LinkedHashMap<String, IDoubleReader>(4);
+		}
+		boolean valid = mPending.isEmpty();
+		mPending.put(name, source);
+		if (valid) {
+			doInvalidateAll();
+		}
+	}
+	
+	/**
+	 * Read the values of all inputs invalidated by lazy sources and hand them to
+	 * {@link AbstractComplexDoubleNode#doWrite(String, double, TimeBase)}, without writing
+	 * them through to the successors. Lazy implementers call this before reading their state
+	 * (i.e. in <code>read()</code> and <code>readTime()</code>).
+	 */
+	protected void pull()
+	{
+		if (mPending == null || mPending.isEmpty()) {
+			return;
+		}
+		Map<String, IDoubleReader> sources = mPending;
+		mPending = null;
+		mPulling = true;
+		try {
+			for (Map.Entry<String, IDoubleReader> e : sources.entrySet()) {
+				TimeBase<?> time = e.getValue().readTime();
+				if (time != null) {
+					doWrite(e.getKey(), e.getValue().read(), time);
+				}
+			}
+		}
+		finally {
+			mPulling = false;
+		}
+	}
+	
+	void clearPending(String name)
+	{
+		if (mPending != null && !mPending.isEmpty()) {
+			mPending.remove(name);
+		}
+	}
+	
 	/**
 	 * Helper function to get/create a node with the given name and class and return its named input.
 	 * This method is mainly to be used by implementers of derived classes to save typing in the
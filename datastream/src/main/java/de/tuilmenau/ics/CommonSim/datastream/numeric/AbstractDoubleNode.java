@@ -1,37 +1,259 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
-import java.util.HashSet;
 
+import de.tuilmenau.ics.CommonSim.datastream.CoalescingNotifier;
+import de.tuilmenau.ics.CommonSim.datastream.CopyOnWriteArray;
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.Epoch;
+import de.tuilmenau.ics.CommonSim.datastream.ICompilable;
 import de.tuilmenau.ics.CommonSim.datastream.IObservable;
 import de.tuilmenau.ics.CommonSim.datastream.IObserver;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
-public abstract class AbstractDoubleNode implements IDoubleNode, IDoubleReader, IObservable
+public abstract class AbstractDoubleNode implements IDoubleNode, IDoubleReader, IObservable, ICompilable, Epoch.Participant
 {
-	protected HashSet<IObserver> mObservers;
-	HashSet<IDoubleWriter> mSuccessors;
+	protected final CopyOnWriteArray<IObserver> mObservers = new CopyOnWriteArray<IObserver>(new IObserver[0]);
+	// manager of the context the node was created in, so writes do not look it up per hop
+	// manager (context) the node was created in
+	final DatastreamManager mManager = DatastreamManager.getInstance();
+	final CopyOnWriteArray<IDoubleWriter> mSuccessors = new CopyOnWriteArray<IDoubleWriter>(new IDoubleWriter[0]);
+	private boolean mCompiled;
+	private volatile boolean mElided;
+	private CoalescingNotifier mNotifier;
+	private volatile CoalescingNotifier.Slot mNotifierSlot;
+	private double[] mBatchBuffer;
+	// change deferred to the end of the epoch (guarded by the epoch)
+	private boolean     mEpochWrite;
+	private boolean     mEpochNotify;
+	private double      mEpochValue;
+	private TimeBase<?> mEpochTime;
+	private long        mEpochNanos;
+	private volatile boolean mLazy;
+	// set while a lazy node reads the values of its sources, suppressing the write-through
+	boolean mPulling;
+	private volatile ParallelFanOut.Tasks mFanOut;
+	// fused chain behind this node, valid as long as its version is the current topology version
+	private FusedChain mFused;
 
 	@Override
 	public void registerObserver(IObserver obs) 
 	{
-		mObservers.add(obs);
+		if (!mObservers.add(obs)) {
+			// TODO log warning message.
+		}
+		updateElision();
 	}
 
 	@Override
 	public void unregisterObserver(IObserver obs) 
 	{
-		mObservers.remove(obs);
+		if (!mObservers.remove(obs)) {
+			// TODO log warning message.
+		}
+		updateElision();
+	}
+	
+	/**
+	 * Successors and observers are kept in copy-on-write arrays, which already are the
+	 * flat dispatch tables of this node and are republished on every change. Compiling
+	 * therefore does not need to snapshot anything. A compiled node without successors
+	 * and observers is elided (see {@link #isElided()}). A compiled node having a single
+	 * successor writes through a linear chain of built-in nodes behind it in one go (see
+	 * {@link FusedChain}).
+	 */
+	@Override
+	public void compile()
+	{
+		mCompiled = true;
+		updateElision();
+	}
+	
+	/**
+	 * Check whether the node is elided. A compiled node nobody consumes (i.e. without
+	 * successors and observers) skips writing through and notifying altogether. It still
+	 * keeps its own state, so reading the node returns the correct values. Connecting a
+	 * successor or registering an observer restores the write-through.
+	 * 
+	 * @return true if the node is elided, false otherwise.
+	 */
+	public boolean isElided()
+	{
+		return mElided;
+	}
+	
+	private synchronized void updateElision()
+	{
+		mManager.topologyChanged();
+		if (mCompiled) {
+			mElided = mSuccessors.isEmpty() && mObservers.isEmpty();
+		}
+	}
+	
+	/**
+	 * Switch the lazy mode of the node on or off. A lazy node does not write its values
+	 * through to successors that are lazy themselves (see {@link ILazyDoubleWriter}) but just
+	 * invalidates them. They read the value from this node when they are read, so values that
+	 * are never read are never calculated. Successors that are not lazy still receive every value.
+	 * Lazy mode is meant for nodes that are sampled rarely, e.g. only at the end of a run.
+	 * 
+	 * @param lazy true to switch lazy mode on, false to switch it off.
+	 */
+	public void setLazy(boolean lazy)
+	{
+		mLazy = lazy;
+		mManager.topologyChanged();
+	}
+	
+	/**
+	 * Write to the successors in parallel (see {@link ParallelFanOut}). Only meant for nodes
+	 * having many successors that take some time and are independent of each other. In epoch
+	 * mode and while lazy the successors are written serially.
+	 * 
+	 * @param fanOut The policy to split the successors into groups written in parallel or null
+	 * 					to write to the successors one after the other in the writing thread.
+	 */
+	public void setFanOut(ParallelFanOut fanOut)
+	{
+		mFanOut = fanOut == null ? null : fanOut.createTasks(mManager);
+	}
+	
+	/**
+	 * Get the policy of writing to the successors in parallel.
+	 * 
+	 * @return The policy or null if the successors are written serially.
+	 */
+	public ParallelFanOut getFanOut()
+	{
+		ParallelFanOut.Tasks fanOut = mFanOut;
+		return fanOut == null ? null : fanOut.getPolicy();
+	}
+	
+	/**
+	 * Check whether the node is in lazy mode.
+	 * 
+	 * @return true if the node is lazy, false otherwise.
+	 */
+	public boolean isLazy()
+	{
+		return mLazy;
+	}
+	
+	/**
+	 * Propagate the invalidation of a lazy node. Lazy successors are invalidated in turn,
+	 * others are written the current value of this node, which is read from it via
+	 * {@link IDoubleReader#read()}. Observers are notified.
+	 * This is to be called by lazy nodes when they got invalidated by their source.
+	 */
+	protected void doInvalidateAll()
+	{
+		if (mElided) {
+			return;
+		}
+		IDoubleWriter[] successors = mSuccessors.get();
+		PropagationQueue queue = getQueue();
+		for (int i = 0; i < successors.length; i++) {
+			if (successors[i] instanceof ILazyDoubleWriter && ((ILazyDoubleWriter)successors[i]).acceptsInvalidation()) {
+				if (queue != null) {
+					queue.invalidate((ILazyDoubleWriter)successors[i], this);
+				}
+				else {
+					((ILazyDoubleWriter)successors[i]).invalidate(this);
+				}
+			}
+			else {
+				double value = read();
+				TimeBase<?> time = readTime();
+				if (time == null) {
+					continue;
+				}
+				if (queue != null) {
+					queue.add(successors[i], value, time, 0);
+				}
+				else {
+					successors[i].write(value, time);
+				}
+			}
+		}
+		doNotifyAll();
+		if (queue != null) {
+			queue.drain();
+		}
+	}
+	
+	/**
+	 * Attach the node to a notifier coalescing the notifications of the observers
+	 * (see {@link CoalescingNotifier}).
+	 * 
+	 * @param notifier The notifier to deliver the notifications. If null, observers
+	 * 					are notified synchronously on every change again.
+	 */
+	public synchronized void setNotifier(CoalescingNotifier notifier)
+	{
+		if (mNotifier != null) {
+			CoalescingNotifier.Slot slot = mNotifierSlot;
+			mNotifierSlot = null;
+			mNotifier.detach(slot);
+		}
+		mNotifier = notifier;
+		if (notifier != null) {
+			mNotifierSlot = notifier.attach(this, mObservers);
+		}
+	}
+	
+	/**
+	 * Get the notifier the node is attached to.
+	 * 
+	 * @return The notifier or null if observers are notified synchronously.
+	 */
+	public CoalescingNotifier getNotifier()
+	{
+		return mNotifier;
+	}
+	
+	@Override
+	public boolean isCompiled()
+	{
+		return mCompiled;
 	}
 
 	/**
 	 * Notify all observers about the fact that a new value was written.
 	 * This method is to be called by classes deriving from that class
 	 * whenever an update of the internal state of the node took place.
+	 * If the node is attached to a {@link CoalescingNotifier}, the node is
+	 * just marked as changed and the observers are notified by the notifier.
 	 */
 	protected void doNotifyAll() 
 	{
-		for (IObserver obs : mObservers) {
-			obs.notify(this);
+		if (mElided) {
+			return;
+		}
+		if (mPulling) {
+			return;
+		}
+		Epoch epoch = mManager.getEpoch();
+		if (epoch != null) {
+			synchronized (epoch) {
+				if (mEpochWrite) {
+					mEpochNotify = true;
+					return;
+				}
+			}
+		}
+		notifyObservers();
+	}
+	
+	private void notifyObservers()
+	{
+		CoalescingNotifier.Slot slot = mNotifierSlot;
+		if (slot != null) {
+			slot.mark();
+			return;
+		}
+		IObserver[] observers = mObservers.get();
+		for (int i = 0; i < observers.length; i++) {
+			observers[i].notify(this);
 		}
 	}
 
@@ -47,29 +269,325 @@ protected void doNotifyAll()
 	 */
 	protected void doWriteAll(double value, TimeBase<?> time) 
 	{
-		if (mSuccessors != null) {
-			for (IDoubleWriter wr : mSuccessors) {
-				wr.write(value, time);
+		if (mElided) {
+			return;
+		}
+		Epoch epoch = mManager.getEpoch();
+		if (epoch != null) {
+			synchronized (epoch) {
+				if (epoch.defer(this, time == null ? Epoch.NO_TIME : time.toNanos())) {
+					defer(value, time, 0);
+					return;
+				}
+			}
+		}
+		else if (mCompiled && writeFused(value, time, 0)) {
+			return;
+		}
+		writeSuccessors(value, time);
+	}
+	
+	private void writeSuccessors(double value, TimeBase<?> time)
+	{
+		if (mLazy) {
+			writeLazy(value, time, 0);
+			return;
+		}
+		IDoubleWriter[] successors = mSuccessors.get();
+		ParallelFanOut.Tasks fanOut = mFanOut;
+		if (fanOut != null && mManager.getEpoch() == null) {
+			fanOut.write(successors, value, time, 0);
+			return;
+		}
+		PropagationQueue queue = getQueue();
+		if (queue != null) {
+			for (int i = 0; i < successors.length; i++) {
+				queue.add(successors[i], value, time, 0);
+			}
+			queue.drain();
+			return;
+		}
+		for (int i = 0; i < successors.length; i++) {
+			successors[i].write(value, time);
+		}
+	}
+
+	/**
+	 * Write-through the new value to all successors using the primitive time.
+	 * This is the counterpart of {@link AbstractDoubleNode#doWriteAll(double, TimeBase)}
+	 * for nodes that received the value via {@link IPrimitiveDoubleWriter#write(double, long)}.
+	 * 
+	 * @param value     the value to write through to all successors.
+	 * @param timeNanos the time in nanoseconds which to give to all the successors.
+	 */
+	protected void doWriteAll(double value, long timeNanos) 
+	{
+		if (mElided) {
+			return;
+		}
+		Epoch epoch = mManager.getEpoch();
+		if (epoch != null) {
+			synchronized (epoch) {
+				if (epoch.defer(this, timeNanos)) {
+					defer(value, null, timeNanos);
+					return;
+				}
+			}
+		}
+		else if (mCompiled && writeFused(value, null, timeNanos)) {
+			return;
+		}
+		writeSuccessors(value, timeNanos);
+	}
+	
+	private void writeSuccessors(double value, long timeNanos)
+	{
+		if (mLazy) {
+			writeLazy(value, null, timeNanos);
+			return;
+		}
+		IDoubleWriter[] successors = mSuccessors.get();
+		ParallelFanOut.Tasks fanOut = mFanOut;
+		if (fanOut != null && mManager.getEpoch() == null) {
+			fanOut.write(successors, value, null, timeNanos);
+			return;
+		}
+		PropagationQueue queue = getQueue();
+		if (queue != null) {
+			for (int i = 0; i < successors.length; i++) {
+				queue.add(successors[i], value, null, timeNanos);
+			}
+			queue.drain();
+			return;
+		}
+		for (int i = 0; i < successors.length; i++) {
+			writeTo(successors[i], value, timeNanos);
+		}
+	}
+	
+	/**
+	 * Write a value with a primitive time to a writer. Writers not implementing
+	 * {@link IPrimitiveDoubleWriter} get a time object created for them.
+	 */
+	static void writeTo(IDoubleWriter writer, double value, long timeNanos)
+	{
+		if (writer instanceof IPrimitiveDoubleWriter) {
+			((IPrimitiveDoubleWriter)writer).write(value, timeNanos);
+		}
+		else {
+			writer.write(value, StreamTime.fromNanos(timeNanos));
+		}
+	}
+	
+	/**
+	 * Write a batch to a writer. Writers not implementing {@link IPrimitiveDoubleWriter}
+	 * get the values one by one.
+	 */
+	static void writeBatchTo(IDoubleWriter writer, double[] values, long[] times, int off, int len)
+	{
+		if (writer instanceof IPrimitiveDoubleWriter) {
+			((IPrimitiveDoubleWriter)writer).writeBatch(values, times, off, len);
+		}
+		else {
+			for (int i = off; i < off+len; i++) {
+				writer.write(values[i], StreamTime.fromNanos(times[i]));
 			}
 		}
 	}
+	
+	/**
+	 * Write-through via the fused chain behind this node. The chain is (re)built on the first
+	 * write after a change of the topology.
+	 * 
+	 * @return true if the value was written, false if there is no chain to write to.
+	 */
+	private boolean writeFused(double value, TimeBase<?> time, long timeNanos)
+	{
+		int version = mManager.getTopologyVersion();
+		FusedChain chain = mFused;
+		if (chain == null || chain.getVersion() != version) {
+			chain = FusedChain.build(this, version);
+			mFused = chain;
+		}
+		if (chain.length() == 0) {
+			return false;
+		}
+		chain.write(value, time, timeNanos, getQueue());
+		return true;
+	}
+	
+	/**
+	 * Get the work queue to append writes to.
+	 * 
+	 * @return The queue of the current thread or null if successors are to be called directly,
+	 * 			i.e. if iterative propagation is switched off or the epoch mode orders the writes.
+	 */
+	private PropagationQueue getQueue()
+	{
+		if (mManager.isIterativePropagation() && mManager.getEpoch() == null) {
+			return PropagationQueue.get();
+		}
+		return null;
+	}
+	
+	/**
+	 * Get the number of nodes fused behind this node.
+	 * 
+	 * @return The length of the current fused chain, 0 if no chain was built or it is outdated.
+	 */
+	int getFusedLength()
+	{
+		FusedChain chain = mFused;
+		return chain == null || chain.getVersion() != mManager.getTopologyVersion() ? 0 : chain.length();
+	}
+	
+	/**
+	 * Write-through of a lazy node: invalidate lazy successors, write to the others.
+	 */
+	private void writeLazy(double value, TimeBase<?> time, long timeNanos)
+	{
+		if (mPulling) {
+			// the value is being read by a successor anyway
+			return;
+		}
+		IDoubleWriter[] successors = mSuccessors.get();
+		PropagationQueue queue = getQueue();
+		for (int i = 0; i < successors.length; i++) {
+			if (successors[i] instanceof ILazyDoubleWriter && ((ILazyDoubleWriter)successors[i]).acceptsInvalidation()) {
+				if (queue != null) {
+					queue.invalidate((ILazyDoubleWriter)successors[i], this);
+				}
+				else {
+					((ILazyDoubleWriter)successors[i]).invalidate(this);
+				}
+			}
+			else if (queue != null) {
+				queue.add(successors[i], value, time, timeNanos);
+			}
+			else if (time != null) {
+				successors[i].write(value, time);
+			}
+			else {
+				writeTo(successors[i], value, timeNanos);
+			}
+		}
+		if (queue != null) {
+			queue.drain();
+		}
+	}
+
+	/**
+	 * Write-through a batch of values to all successors. This is the counterpart of
+	 * {@link AbstractDoubleNode#doWriteAll(double, long)} for nodes that received
+	 * a batch via {@link IPrimitiveDoubleWriter#writeBatch(double[], long[], int, int)}.
+	 * 
+	 * @param values the values to write through to all successors.
+	 * @param times  the times of the values in nanoseconds.
+	 * @param off    the index of the first value in both arrays.
+	 * @param len    the number of values to write.
+	 */
+	protected void doWriteAll(double[] values, long[] times, int off, int len) 
+	{
+		if (mElided) {
+			return;
+		}
+		if (mManager.getEpoch() != null) {
+			// the values of a batch may belong to several epochs
+			for (int i = off; i < off+len; i++) {
+				doWriteAll(values[i], times[i]);
+			}
+			return;
+		}
+		boolean lazy = mLazy;
+		if (lazy && (mPulling || len <= 0)) {
+			return;
+		}
+		IDoubleWriter[] successors = mSuccessors.get();
+		ParallelFanOut.Tasks fanOut = mFanOut;
+		if (!lazy && fanOut != null) {
+			fanOut.writeBatch(successors, values, times, off, len);
+			return;
+		}
+		for (int i = 0; i < successors.length; i++) {
+			if (lazy && successors[i] instanceof ILazyDoubleWriter && ((ILazyDoubleWriter)successors[i]).acceptsInvalidation()) {
+				((ILazyDoubleWriter)successors[i]).invalidate(this);
+			}
+			else {
+				writeBatchTo(successors[i], values, times, off, len);
+			}
+		}
+	}
+	
+	/**
+	 * Remember a change to be propagated at the end of the epoch. Must be called with the lock of the epoch held.
+	 */
+	private void defer(double value, TimeBase<?> time, long timeNanos)
+	{
+		mEpochWrite = true;
+		mEpochValue = value;
+		mEpochTime = time;
+		mEpochNanos = timeNanos;
+	}
+	
+	/**
+	 * Propagate the latest value written in the ending epoch to the successors and notify
+	 * the observers once.
+	 */
+	@Override
+	public void commitEpoch()
+	{
+		if (mEpochWrite) {
+			mEpochWrite = false;
+			TimeBase<?> time = mEpochTime;
+			mEpochTime = null;
+			if (time != null) {
+				writeSuccessors(mEpochValue, time);
+			}
+			else {
+				writeSuccessors(mEpochValue, mEpochNanos);
+			}
+		}
+		if (mEpochNotify) {
+			mEpochNotify = false;
+			notifyObservers();
+		}
+	}
+	
+	/**
+	 * Get a scratch buffer for calculating the output values of a batch. The
+	 * buffer is reused by subsequent calls, so its content is only valid until
+	 * the next call.
+	 * 
+	 * @param size The minimum size of the buffer.
+	 * @return A buffer of at least the given size.
+	 */
+	protected double[] getBatchBuffer(int size)
+	{
+		if (mBatchBuffer == null || mBatchBuffer.length < size) {
+			mBatchBuffer = new double[size];
+		}
+		return mBatchBuffer;
+	}
 
 	@Override
 	public void connect(IDoubleWriter successor) 
 	{
-		if (mSuccessors == null) {
-			mSuccessors = new HashSet<IDoubleWriter>();
-		}
 		if (!mSuccessors.add(successor)) {
 			// TODO log warning message.
+			return;
 		}
+		updateElision();
+		mManager.connected(this, successor);
 	}
 
 	@Override
 	public void disconnect(IDoubleWriter successor) 
 	{
-		if (mSuccessors == null || !mSuccessors.remove(successor)) {
+		if (!mSuccessors.remove(successor)) {
 			// TODO log warning message
+			return;
 		}
+		updateElision();
+		mManager.disconnected(this, successor);
 	}
 }
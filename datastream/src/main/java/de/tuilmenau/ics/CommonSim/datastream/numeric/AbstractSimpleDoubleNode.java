@@ -1,9 +1,8 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
-import java.util.HashSet;
-
-import de.tuilmenau.ics.CommonSim.datastream.IObserver;
 import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 
 /**
@@ -14,15 +13,10 @@
  * 
  * @author Markus Brueckner.
  */
-public abstract class AbstractSimpleDoubleNode extends AbstractDoubleNode implements IDoubleWriter
+public abstract class AbstractSimpleDoubleNode extends AbstractDoubleNode implements IPrimitiveDoubleWriter
 {
 	static final String[]  sInputNames = {};
 	
-	public AbstractSimpleDoubleNode()
-	{
-		mObservers = new HashSet<IObserver>();
-	}
-	
 	@Override
 	public IDoubleWriter getInput(String name)
 	{
@@ -37,4 +31,27 @@ public String[] getInputNames()
 	{
 		return sInputNames;
 	}
+	
+	/**
+	 * Default implementation of the primitive write path. It creates a time object
+	 * and hands the value to {@link IDoubleWriter#write(double, TimeBase)}. Nodes
+	 * able to handle the primitive time directly override this method.
+	 */
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		write(value, StreamTime.fromNanos(timeNanos));
+	}
+	
+	/**
+	 * Default implementation of the batch write path, writing the values one by one.
+	 * Nodes able to handle whole batches override this method.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		for (int i = off; i < off+len; i++) {
+			write(values[i], times[i]);
+		}
+	}
 }
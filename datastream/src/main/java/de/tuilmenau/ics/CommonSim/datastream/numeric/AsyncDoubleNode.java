@@ -0,0 +1,241 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.concurrent.Executor;
+
+import de.tuilmenau.ics.CommonSim.datastream.AsyncQueue;
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.OverflowPolicy;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Node decoupling fast producers from slow successors (e.g. file nodes). Values written
+ * to this node are put into a bounded queue of primitive values and written through to the
+ * successors by a task running on an executor. The writing thread (e.g. the simulation)
+ * therefore never runs the successors itself. To put the node in front of a writer, connect
+ * the writer as a successor (see {@link AsyncDoubleNode#AsyncDoubleNode(IDoubleWriter, Executor, int, OverflowPolicy)})
+ * and write to this node instead.
+ * Any number of threads may write to the node without locking (see {@link AsyncQueue}). The
+ * queued values are handed to the successors as batches in the order they were written, with
+ * observers being notified once per batch.
+ * What happens if the queue is full is determined by the {@link OverflowPolicy} of the node.
+ * Times are queued as nanoseconds, so time objects of types derived from {@link TimeBase} are
+ * not passed on as such.
+ *
+ * @author agent
+ */
+public class AsyncDoubleNode extends AbstractSimpleDoubleNode
+{
+	/**
+	 * Capacity of the queue of nodes created without giving one.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The queue, keeping the values in the slots of primitive arrays.
+	 */
+	private final class Queue extends AsyncQueue
+	{
+		private final double[] mValues;
+		private final long[]   mTimes;
+		// the batch handed to the successors (only used by the consumer)
+		private final double[] mDrainValues;
+		private final long[]   mDrainTimes;
+
+		Queue(Executor executor, int capacity, OverflowPolicy policy)
+		{
+			super(executor, capacity, policy);
+			mValues = new double[capacity];
+			mTimes = new long[capacity];
+			mDrainValues = new double[capacity];
+			mDrainTimes = new long[capacity];
+		}
+
+		void offer(double value, long timeNanos)
+		{
+			long pos = claim();
+			if (pos >= 0) {
+				int slot = slot(pos);
+				mValues[slot] = value;
+				mTimes[slot] = timeNanos;
+				publish(pos);
+			}
+		}
+
+		@Override
+		protected void take(int slot, int index)
+		{
+			mDrainValues[index] = mValues[slot];
+			mDrainTimes[index] = mTimes[slot];
+		}
+
+		@Override
+		protected void discard(int slot)
+		{
+		}
+
+		@Override
+		protected void deliver(int count)
+		{
+			mValue = mDrainValues[count-1];
+			mTimeNanos = mDrainTimes[count-1];
+			mHasValue = true;
+			doWriteAll(mDrainValues, mDrainTimes, 0, count);
+			doNotifyAll();
+		}
+	}
+
+	private final Queue mQueue;
+
+	private volatile double  mValue;
+	private volatile long    mTimeNanos;
+	private volatile boolean mHasValue;
+
+	/**
+	 * Create a node with the default capacity, blocking producers if the queue is full and
+	 * draining on the executor of the {@link DatastreamManager}.
+	 */
+	public AsyncDoubleNode()
+	{
+		this(DatastreamManager.getInstance().getExecutor(), DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Create a new node.
+	 *
+	 * @param executor The executor running the task writing the queued values through to the successors.
+	 * 					Any executor will do, e.g. a single thread or one starting a virtual thread per task.
+	 * @param capacity The maximum number of values in the queue.
+	 * @param policy   The behaviour if a value is written while the queue is full.
+	 */
+	public AsyncDoubleNode(Executor executor, int capacity, OverflowPolicy policy)
+	{
+		mQueue = new Queue(executor, capacity, policy);
+	}
+
+	/**
+	 * Create a new node in front of the given writer.
+	 *
+	 * @param target   The writer to hand the values to asynchronously. It is connected as a successor.
+	 * @param executor The executor running the task writing the queued values through to the successors.
+	 * @param capacity The maximum number of values in the queue.
+	 * @param policy   The behaviour if a value is written while the queue is full.
+	 */
+	public AsyncDoubleNode(IDoubleWriter target, Executor executor, int capacity, OverflowPolicy policy)
+	{
+		this(executor, capacity, policy);
+		connect(target);
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(1.0, time);
+	}
+
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		write(value, time.toNanos());
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		mQueue.offer(value, timeNanos);
+	}
+
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		for (int i = off; i < off+len; i++) {
+			mQueue.offer(values[i], times[i]);
+		}
+	}
+
+	/**
+	 * Write all values queued so far through to the successors in the calling thread. This
+	 * is useful e.g. at the end of a simulation run to make sure all values have arrived.
+	 */
+	public void flush()
+	{
+		mQueue.drain();
+	}
+
+	/**
+	 * Get the number of values dropped or replaced because the queue was full.
+	 *
+	 * @return The number of values lost so far.
+	 */
+	public long getDropped()
+	{
+		return mQueue.getDropped();
+	}
+
+	/**
+	 * Returns the value last written through to the successors.
+	 */
+	@Override
+	public double read()
+	{
+		return mValue;
+	}
+
+	/**
+	 * Returns the time of the value last written through to the successors.
+	 */
+	@Override
+	public TimeBase<?> readTime()
+	{
+		return mHasValue ? StreamTime.fromNanos(mTimeNanos) : null;
+	}
+
+	/**
+	 * Resets the node, discarding all values still queued.
+	 */
+	@Override
+	public void reset()
+	{
+		mQueue.discardAll();
+		mValue = 0;
+		mHasValue = false;
+		mQueue.resetDropped();
+	}
+
+	/**
+	 * Open (or create) a writer under the given name for that node type.
+	 *
+	 * @param id The id for the node. Either the node under that id is retrieved or a new
+	 * 				node of type AsyncDoubleNode is created, registered under the given name and
+	 * 				returned.
+	 * @return A writer suitable for writing doubles to an AsyncDoubleNode.
+	 */
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return open(id).getInput(null);
+	}
+
+	/**
+	 * Open (or create) a reader under the given name for that node type.
+	 *
+	 * @param id The id for the node. Either the node under that id is retrieved or a new
+	 * 				node of type AsyncDoubleNode is created, registered under the given name and
+	 * 				returned.
+	 * @return A reader suitable for reading doubles from an AsyncDoubleNode.
+	 */
+	public static IDoubleReader openAsReader(String id)
+	{
+		return open(id);
+	}
+
+	/**
+	 * Open/create the node under the given name.
+	 *
+	 * @param name The name to attach to the node.
+	 * @return The node under that name.
+	 */
+	public static AsyncDoubleNode open(String name)
+	{
+		return DatastreamManager.open(AsyncDoubleNode.class, name);
+	}
+}
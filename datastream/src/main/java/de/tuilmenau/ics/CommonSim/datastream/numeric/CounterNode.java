@@ -29,6 +29,36 @@ else if(value > 0) {
 		// else value == 0: do nothing
 	}
 
+	@Override
+	public synchronized void write(double value, long timeNanos) 
+	{
+		if(value < 0) {
+			super.write(read() -1.0, timeNanos);
+		}
+		else if(value > 0) {
+			super.write(read() +1.0, timeNanos);
+		}
+	}
+
+	@Override
+	public synchronized void writeBatch(double[] values, long[] times, int off, int len) 
+	{
+		double[] counts = getBatchBuffer(off+len);
+		double count = read();
+		int start = off;
+		for (int i = off; i < off+len; i++) {
+			if (values[i] == 0) {
+				// value == 0: do nothing, so write through what we've got so far and skip it
+				super.writeBatch(counts, times, start, i-start);
+				start = i+1;
+				continue;
+			}
+			count += values[i] < 0 ? -1.0 : +1.0;
+			counts[i] = count;
+		}
+		super.writeBatch(counts, times, start, off+len-start);
+	}
+
 	@Override
 	public synchronized void reset() 
 	{
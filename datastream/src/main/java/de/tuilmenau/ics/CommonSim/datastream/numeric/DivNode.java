@@ -1,6 +1,7 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
@@ -10,28 +11,89 @@
  * inputs is written. Write time is the time of the last input change.
  * If the divisor is 0.0 then the read value returns positive infinity, negative
  * infinity or NaN depending on the value of the dividend.
+ * In lazy mode the node reads the inputs from lazy predecessors only when it is read itself.
  * 
  * @author Markus Brueckner
  */
-public class DivNode extends AbstractComplexDoubleNode 
+public class DivNode extends AbstractComplexDoubleNode implements FusedChain.Stage
 {
 	private double      mDividend;
 	private double      mDivisor;
 	private TimeBase<?> mTime;
+	private long        mTimeNanos;
+	private boolean     mTimeIsNanos;
+	
+	/**
+	 * Create a new node with the inputs "dividend" and "divisor".
+	 */
+	public DivNode()
+	{
+		addInput("dividend");
+		addInput("divisor");
+	}
+	
+	/**
+	 * The quotient only depends on the latest values of the inputs, so lazy inputs are invalidated.
+	 */
+	@Override
+	protected boolean acceptsInvalidation()
+	{
+		return isLazy();
+	}
 	
 	@Override
 	protected void doWrite(String name, double value, TimeBase<?> time) 
 	{
-		if (name.equals("dividend")) {
-			mDividend = value;
-		}
-		else {
-			mDivisor = value;
-		}
+		setInput(name, value);
 		mTime = time;
+		mTimeIsNanos = false;
 		doWriteAll(getValue(), mTime);
 		doNotifyAll();
 	}
+	
+	@Override
+	protected void doWrite(String name, double value, long timeNanos) 
+	{
+		setInput(name, value);
+		mTime = null;
+		mTimeNanos = timeNanos;
+		mTimeIsNanos = true;
+		doWriteAll(getValue(), mTimeNanos);
+		doNotifyAll();
+	}
+	
+	/**
+	 * Store the input without writing through (see {@link FusedChain}).
+	 */
+	@Override
+	public double step(IDoubleWriter input, double value, TimeBase<?> time, long timeNanos)
+	{
+		String name = ((NamedInput)input).getName();
+		clearPending(name);
+		setInput(name, value);
+		mTime = time;
+		mTimeNanos = timeNanos;
+		mTimeIsNanos = time == null;
+		return getValue();
+	}
+	
+	@Override
+	protected void doWriteBatch(String name, double[] values, long[] times, int off, int len) 
+	{
+		if (len <= 0) {
+			return;
+		}
+		double[] quotients = getBatchBuffer(off+len);
+		for (int i = off; i < off+len; i++) {
+			setInput(name, values[i]);
+			quotients[i] = getValue();
+		}
+		mTime = null;
+		mTimeNanos = times[off+len-1];
+		mTimeIsNanos = true;
+		doWriteAll(quotients, times, off, len);
+		doNotifyAll();
+	}
 
 	@Override
 	public void reset() 
@@ -39,19 +101,41 @@ public void reset()
 		mDividend = 0.0;
 		mDivisor  = 0.0;
 		mTime     = null;
+		mTimeIsNanos = false;
 	}
 
 	@Override
 	public double read() 
 	{
+		pull();
 		return getValue();
 	}
 
 	@Override
 	public TimeBase<?> readTime() 
 	{
+		pull();
+		if (mTime == null && mTimeIsNanos) {
+			mTime = StreamTime.fromNanos(mTimeNanos);
+		}
 		return mTime;
 	}
+	
+	/**
+	 * Little helper to store a value written to one of the inputs.
+	 * 
+	 * @param name  The name of the input.
+	 * @param value The value written.
+	 */
+	private void setInput(String name, double value)
+	{
+		if (name.equals("dividend")) {
+			mDividend = value;
+		}
+		else {
+			mDivisor = value;
+		}
+	}
 
 	/**
 	 * Little helper to avoid code duplication when calculating the return value of the node.
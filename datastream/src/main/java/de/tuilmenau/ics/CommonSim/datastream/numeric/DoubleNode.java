@@ -1,18 +1,24 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
  * Node saving a double value. This is the simplest double node just saving one
- * double value along with the write time. 
+ * double value along with the write time. Times written as nanoseconds are kept
+ * as such and only converted to a {@link TimeBase} object when read.
+ * In lazy mode the node reads the value from a lazy predecessor only when it is read itself.
  * 
  * @author Markus Brueckner
  */
-public class DoubleNode extends AbstractSimpleDoubleNode 
+public class DoubleNode extends AbstractSimpleDoubleNode implements ILazyDoubleWriter, FusedChain.Stage
 {
 	private double      mValue;
 	private TimeBase<?> mTime;
+	private long        mTimeNanos;
+	private boolean     mTimeIsNanos;
+	private IDoubleReader mSource;
 
 	@Override
 	public void tick(TimeBase<?> time) 
@@ -23,29 +29,117 @@ public void tick(TimeBase<?> time)
 	@Override
 	public void write(double value, TimeBase<?> time) 
 	{
+		mSource = null;
 		mValue = value;
 		mTime  = time;
+		mTimeIsNanos = false;
 		doWriteAll(mValue, mTime);
 		doNotifyAll();
 	}
 
+	@Override
+	public void write(double value, long timeNanos) 
+	{
+		mSource = null;
+		mValue = value;
+		mTime  = null;
+		mTimeNanos = timeNanos;
+		mTimeIsNanos = true;
+		doWriteAll(mValue, mTimeNanos);
+		doNotifyAll();
+	}
+
+	/**
+	 * Writes the batch through to the successors as a whole. Afterwards the node
+	 * holds the last value of the batch and observers are notified once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len) 
+	{
+		if (len <= 0) {
+			return;
+		}
+		mSource = null;
+		mValue = values[off+len-1];
+		mTime  = null;
+		mTimeNanos = times[off+len-1];
+		mTimeIsNanos = true;
+		doWriteAll(values, times, off, len);
+		doNotifyAll();
+	}
+
+	/**
+	 * The node only keeps the latest value, so it accepts invalidations in lazy mode. Subclasses
+	 * do not: they get every value written unless they opt in by overriding this method.
+	 */
+	@Override
+	public boolean acceptsInvalidation()
+	{
+		return isLazy() && getClass() == DoubleNode.class;
+	}
+
+	/**
+	 * Store the value without writing through (see {@link FusedChain}).
+	 */
+	@Override
+	public double step(IDoubleWriter input, double value, TimeBase<?> time, long timeNanos)
+	{
+		mSource = null;
+		mValue = value;
+		mTime  = time;
+		mTimeNanos = timeNanos;
+		mTimeIsNanos = time == null;
+		return value;
+	}
+
+	@Override
+	public void invalidate(IDoubleReader source) 
+	{
+		boolean valid = mSource == null;
+		mSource = source;
+		if (valid) {
+			doInvalidateAll();
+		}
+	}
+
 	@Override
 	public double read() 
 	{
+		pull();
 		return mValue;
 	}
 
 	@Override
 	public TimeBase<?> readTime() 
 	{
+		pull();
+		if (mTime == null && mTimeIsNanos) {
+			mTime = StreamTime.fromNanos(mTimeNanos);
+		}
 		return mTime;
 	}
 	
 	@Override
 	public void reset() 
 	{
+		mSource = null;
 		mValue = 0;
 		mTime  = null;
+		mTimeIsNanos = false;
+	}
+	
+	/**
+	 * Read the value from the lazy source that invalidated the node.
+	 */
+	private void pull()
+	{
+		IDoubleReader source = mSource;
+		if (source != null) {
+			mSource = null;
+			mValue = source.read();
+			mTime = source.readTime();
+			mTimeIsNanos = false;
+		}
 	}
 	
 	/**
@@ -0,0 +1,150 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.tuilmenau.ics.CommonSim.datastream.INodeInput;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Operator fusing a linear chain of built-in nodes. A chain starts at the successor of a
+ * compiled node having exactly one successor and continues as long as the nodes are of a
+ * built-in type (see {@link FusedChain#isFusable(AbstractDoubleNode)}), have exactly one
+ * successor and no observers. Instead of writing to the first node, which writes to the next
+ * one and so on, the operator updates the state of all nodes of the chain in a single loop and
+ * writes the result to the successor of the last node. The nodes keep their state, so reading
+ * them still returns the correct values.
+ * A chain is only valid for the version of the topology it was built for. The version is kept
+ * by the manager of the nodes and changes whenever any of its nodes is connected, disconnected,
+ * observed or switched to lazy mode, and nodes build a new chain on their next write. A chain
+ * therefore ends at nodes of another manager. Batches and writes in epoch mode are not fused.
+ *
+ * @author agent
+ */
+final class FusedChain
+{
+	/**
+	 * Interface of built-in nodes that can be part of a chain.
+	 */
+	interface Stage
+	{
+		/**
+		 * Update the state of the node as if the value was written to the given input, without
+		 * writing through or notifying anybody.
+		 *
+		 * @param input     The writer of the node the value is written to.
+		 * @param value     The value written.
+		 * @param time      The time of the value or null if the time is given in nanoseconds.
+		 * @param timeNanos The time of the value in nanoseconds if time is null.
+		 * @return The new output value of the node.
+		 */
+		double step(IDoubleWriter input, double value, TimeBase<?> time, long timeNanos);
+	}
+
+	private final Stage[] mStages;
+	private final IDoubleWriter[] mInputs;
+	private final IDoubleWriter mTail;
+	private final int mVersion;
+
+	private FusedChain(Stage[] stages, IDoubleWriter[] inputs, IDoubleWriter tail, int version)
+	{
+		mStages = stages;
+		mInputs = inputs;
+		mTail = tail;
+		mVersion = version;
+	}
+
+	/**
+	 * Write a value through the chain.
+	 *
+	 * @param queue The work queue to append the write to the successor of the chain to or
+	 * 				null to write directly.
+	 */
+	void write(double value, TimeBase<?> time, long timeNanos, PropagationQueue queue)
+	{
+		for (int i = 0; i < mStages.length; i++) {
+			value = mStages[i].step(mInputs[i], value, time, timeNanos);
+		}
+		if (mTail != null) {
+			if (queue != null) {
+				queue.add(mTail, value, time, timeNanos);
+				queue.drain();
+			}
+			else if (time != null) {
+				mTail.write(value, time);
+			}
+			else {
+				AbstractDoubleNode.writeTo(mTail, value, timeNanos);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of nodes fused. An empty chain marks a node whose successors cannot be fused.
+	 */
+	int length()
+	{
+		return mStages.length;
+	}
+
+	/**
+	 * Get the version of the topology the chain was built for.
+	 */
+	int getVersion()
+	{
+		return mVersion;
+	}
+
+	/**
+	 * Build the chain behind the given node.
+	 *
+	 * @param head    The node writing into the chain.
+	 * @param version The current version of the topology.
+	 * @return The chain, which is empty if the successors of the node cannot be fused.
+	 */
+	static FusedChain build(AbstractDoubleNode head, int version)
+	{
+		IDoubleWriter[] successors = head.mSuccessors.get();
+		if (head.isLazy() || successors.length != 1) {
+			return new FusedChain(new Stage[0], new IDoubleWriter[0], null, version);
+		}
+		List<Stage> stages = new ArrayList<Stage>();
+		List<IDoubleWriter> inputs = new ArrayList<IDoubleWriter>();
+		Map<AbstractDoubleNode, Boolean> visited = new IdentityHashMap<AbstractDoubleNode, Boolean>();
+		visited.put(head, Boolean.TRUE);
+		IDoubleWriter next = successors[0];
+		while (next != null) {
+			AbstractDoubleNode node = owner(next);
+			if (node == null || node.mManager != head.mManager || !isFusable(node) || visited.containsKey(node)) {
+				break;
+			}
+			IDoubleWriter[] nodeSuccessors = node.mSuccessors.get();
+			if (nodeSuccessors.length > 1 || !node.mObservers.isEmpty() || node.isLazy()) {
+				break;
+			}
+			visited.put(node, Boolean.TRUE);
+			stages.add((Stage)node);
+			inputs.add(next);
+			next = nodeSuccessors.length == 1 ? nodeSuccessors[0] : null;
+		}
+		return new FusedChain(stages.toArray(new Stage[stages.size()]), inputs.toArray(new IDoubleWriter[inputs.size()]), next, version);
+	}
+
+	/**
+	 * Check whether the node is of a built-in type that can be fused. Classes derived from
+	 * the built-in types are not fused as they might change the behaviour.
+	 */
+	static boolean isFusable(AbstractDoubleNode node)
+	{
+		Class<?> cls = node.getClass();
+		return cls == DoubleNode.class || cls == SumNode.class || cls == DivNode.class;
+	}
+
+	private static AbstractDoubleNode owner(IDoubleWriter writer)
+	{
+		Object node = writer instanceof INodeInput ? ((INodeInput)writer).getNode() : writer;
+		return node instanceof AbstractDoubleNode ? (AbstractDoubleNode)node : null;
+	}
+}
@@ -0,0 +1,350 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Node recording the distribution of the values written (e.g. packet delays) in a histogram
+ * with logarithmic buckets. Every power of two between the lowest and the highest value is
+ * split into 2^precision buckets of equal width, so the width of a bucket is proportional to
+ * its values and percentiles have a fixed relative error of at most 2^-(precision+1). The
+ * bucket of a value is taken directly from the bits of the double, so recording takes
+ * constant time, and the memory needed only depends on the range and the precision, not on
+ * the number of values. With the defaults (1 microsecond to 10000 seconds, 5 bits) the
+ * histogram takes less than 9 KB.
+ * Values below the lowest value (including 0 and negative values) are counted in the first
+ * bucket, values above the highest one in the last bucket. Minimum, maximum, sum and count
+ * are kept exactly. NaN is ignored.
+ * Histograms with the same range and precision can be merged without loss, e.g. to combine
+ * the histograms of several replications. The values written are passed through to the
+ * successors unchanged. {@link HistogramNode#read()} returns the median, other percentiles
+ * are available via {@link HistogramNode#read(double)}.
+ * The methods of the node are synchronized, so it may be read (e.g. by
+ * {@link HistogramNode#snapshot(boolean)} in intervals) while it is written.
+ *
+ * @author agent
+ */
+public class HistogramNode extends AbstractSimpleDoubleNode
+{
+	/**
+	 * The default lowest value, one microsecond if values are in seconds.
+	 */
+	public static final double DEFAULT_LOWEST = 1e-6;
+	/**
+	 * The default highest value, 10000 seconds if values are in seconds.
+	 */
+	public static final double DEFAULT_HIGHEST = 1e4;
+	/**
+	 * The default number of bits of precision.
+	 */
+	public static final int DEFAULT_PRECISION = 5;
+
+	private final double mLowest;
+	private final double mHighest;
+	private final int    mPrecision;
+	// index of the first bucket in the sequence of buckets over all doubles
+	private final long   mOffset;
+	private final long[] mCounts;
+
+	private long   mCount;
+	private double mSum;
+	private double mMin;
+	private double mMax;
+	private long   mTimeNanos;
+	private TimeBase<?> mTime;
+
+	/**
+	 * Create a histogram with the default range and precision.
+	 */
+	public HistogramNode()
+	{
+		this(DEFAULT_LOWEST, DEFAULT_HIGHEST, DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Create a new histogram.
+	 *
+	 * @param lowest    The lowest value to distinguish. Must be a positive normal double.
+	 * @param highest   The highest value to distinguish.
+	 * @param precision The number of bits of precision, i.e. each power of two is split into 2^precision buckets (0 to 20).
+	 */
+	public HistogramNode(double lowest, double highest, int precision)
+	{
+		if (!(lowest >= Double.MIN_NORMAL) || !(highest >= lowest) || Double.isInfinite(highest)) {
+			throw new IllegalArgumentException("Invalid range ["+lowest+", "+highest+"].");
+		}
+		if (precision < 0 || precision > 20) {
+			throw new IllegalArgumentException("Precision must be between 0 and 20 bits.");
+		}
+		mLowest = lowest;
+		mHighest = highest;
+		mPrecision = precision;
+		int minExponent = Math.getExponent(lowest);
+		int maxExponent = Math.getExponent(highest);
+		mOffset = (long)(minExponent+Double.MAX_EXPONENT) << precision;
+		mCounts = new long[(maxExponent-minExponent+1) << precision];
+		reset();
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(1.0, time);
+	}
+
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		synchronized (this) {
+			if (!record(value)) {
+				return;
+			}
+			mTime = time;
+		}
+		doWriteAll(value, time);
+		doNotifyAll();
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		synchronized (this) {
+			if (!record(value)) {
+				return;
+			}
+			mTime = null;
+			mTimeNanos = timeNanos;
+		}
+		doWriteAll(value, timeNanos);
+		doNotifyAll();
+	}
+
+	/**
+	 * Records the whole batch, passes it through and notifies the observers once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		if (len <= 0) {
+			return;
+		}
+		synchronized (this) {
+			for (int i = off; i < off+len; i++) {
+				record(values[i]);
+			}
+			mTime = null;
+			mTimeNanos = times[off+len-1];
+		}
+		doWriteAll(values, times, off, len);
+		doNotifyAll();
+	}
+
+	private boolean record(double value)
+	{
+		if (Double.isNaN(value)) {
+			return false;
+		}
+		mCounts[index(value)]++;
+		mCount++;
+		mSum += value;
+		if (value < mMin) {
+			mMin = value;
+		}
+		if (value > mMax) {
+			mMax = value;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the bucket of a value.
+	 */
+	private int index(double value)
+	{
+		if (!(value > mLowest)) {
+			return 0;
+		}
+		if (value >= mHighest) {
+			return mCounts.length-1;
+		}
+		long index = (Double.doubleToRawLongBits(value) >>> (52-mPrecision))-mOffset;
+		return (int)Math.max(0, Math.min(mCounts.length-1, index));
+	}
+
+	/**
+	 * Get the value representing a bucket, i.e. the middle of the bucket.
+	 */
+	private double value(int index)
+	{
+		double lower = Double.longBitsToDouble((index+mOffset) << (52-mPrecision));
+		double upper = Double.longBitsToDouble((index+1+mOffset) << (52-mPrecision));
+		return (lower+upper)/2;
+	}
+
+	/**
+	 * Get the median of the values recorded.
+	 */
+	@Override
+	public double read()
+	{
+		return read(0.5);
+	}
+
+	/**
+	 * Get a percentile of the values recorded, e.g. 0.99 for the 99th percentile. The result
+	 * is the middle of the bucket containing the percentile, limited to the minimum and
+	 * maximum recorded. Takes time linear in the number of buckets.
+	 *
+	 * @param quantile The quantile between 0 and 1.
+	 * @return The value of the quantile or NaN if no values were recorded.
+	 */
+	public synchronized double read(double quantile)
+	{
+		if (mCount == 0) {
+			return Double.NaN;
+		}
+		if (quantile <= 0.0) {
+			return mMin;
+		}
+		if (quantile >= 1.0) {
+			return mMax;
+		}
+		long rank = Math.max(1, (long)Math.ceil(quantile*mCount));
+		long seen = 0;
+		for (int i = 0; i < mCounts.length; i++) {
+			seen += mCounts[i];
+			if (seen >= rank) {
+				return Math.max(mMin, Math.min(mMax, value(i)));
+			}
+		}
+		return mMax;
+	}
+
+	@Override
+	public synchronized TimeBase<?> readTime()
+	{
+		if (mTime == null && mCount > 0) {
+			mTime = StreamTime.fromNanos(mTimeNanos);
+		}
+		return mTime;
+	}
+
+	/**
+	 * Get the number of values recorded.
+	 */
+	public synchronized long getCount()
+	{
+		return mCount;
+	}
+
+	/**
+	 * Get the smallest value recorded (NaN if none).
+	 */
+	public synchronized double getMin()
+	{
+		return mCount == 0 ? Double.NaN : mMin;
+	}
+
+	/**
+	 * Get the largest value recorded (NaN if none).
+	 */
+	public synchronized double getMax()
+	{
+		return mCount == 0 ? Double.NaN : mMax;
+	}
+
+	/**
+	 * Get the mean of the values recorded (NaN if none).
+	 */
+	public synchronized double getMean()
+	{
+		return mCount == 0 ? Double.NaN : mSum/mCount;
+	}
+
+	/**
+	 * Add the values recorded by another histogram to this one. Nothing is lost as long as
+	 * both histograms have the same range and precision.
+	 *
+	 * @param other The histogram to merge into this one. It is left unchanged.
+	 * @throws StreamException if the histograms differ in range or precision.
+	 */
+	public void merge(HistogramNode other)
+	{
+		if (other == this) {
+			throw new StreamException("Cannot merge a histogram into itself.");
+		}
+		if (other.mLowest != mLowest || other.mHighest != mHighest || other.mPrecision != mPrecision) {
+			throw new StreamException("Cannot merge histograms of different range or precision.");
+		}
+		HistogramNode copy = other.snapshot(false);
+		synchronized (this) {
+			for (int i = 0; i < mCounts.length; i++) {
+				mCounts[i] += copy.mCounts[i];
+			}
+			mCount += copy.mCount;
+			mSum += copy.mSum;
+			mMin = Math.min(mMin, copy.mMin);
+			mMax = Math.max(mMax, copy.mMax);
+		}
+	}
+
+	/**
+	 * Get a copy of the histogram, e.g. to report the distribution of the values of an interval.
+	 * The copy is not registered and has neither successors nor observers.
+	 *
+	 * @param reset true to reset this histogram afterwards, so the next snapshot contains the
+	 * 				values recorded since this one.
+	 * @return The copy.
+	 */
+	public synchronized HistogramNode snapshot(boolean reset)
+	{
+		HistogramNode copy = new HistogramNode(mLowest, mHighest, mPrecision);
+		System.arraycopy(mCounts, 0, copy.mCounts, 0, mCounts.length);
+		copy.mCount = mCount;
+		copy.mSum = mSum;
+		copy.mMin = mMin;
+		copy.mMax = mMax;
+		copy.mTime = mTime;
+		copy.mTimeNanos = mTimeNanos;
+		if (reset) {
+			reset();
+		}
+		return copy;
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		for (int i = 0; i < mCounts.length; i++) {
+			mCounts[i] = 0;
+		}
+		mCount = 0;
+		mSum = 0.0;
+		mMin = Double.POSITIVE_INFINITY;
+		mMax = Double.NEGATIVE_INFINITY;
+		mTime = null;
+	}
+
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return open(id);
+	}
+
+	public static IDoubleReader openAsReader(String id)
+	{
+		return open(id);
+	}
+
+	/**
+	 * Open/create the node under the given name.
+	 *
+	 * @param name The name to attach to the node.
+	 * @return The node under that name.
+	 */
+	public static HistogramNode open(String name)
+	{
+		return DatastreamManager.open(HistogramNode.class, name);
+	}
+}
@@ -4,6 +4,7 @@
 import java.util.LinkedList;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
@@ -69,6 +70,39 @@ public void write(double value, TimeBase<?> time)
 		}
 	}
 
+	/**
+	 * Primitive write path. As the history keeps a time object per value, the time
+	 * is converted once for the history. The value is written through to the
+	 * successors with the primitive time though.
+	 */
+	@Override
+	public void write(double value, long timeNanos) 
+	{
+		synchronized (mHistory) {
+			if (mHistorySize != 0 && mHistory.size()==mHistorySize) {
+				mHistory.remove();
+			}
+			mHistory.add(new Tuple(StreamTime.fromNanos(timeNanos), value));
+			doWriteAll(value, timeNanos);
+			doNotifyAll();
+		}
+	}
+
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len) 
+	{
+		synchronized (mHistory) {
+			for (int i = off; i < off+len; i++) {
+				if (mHistorySize != 0 && mHistory.size()==mHistorySize) {
+					mHistory.remove();
+				}
+				mHistory.add(new Tuple(StreamTime.fromNanos(times[i]), values[i]));
+			}
+			doWriteAll(values, times, off, len);
+			doNotifyAll();
+		}
+	}
+
 	@Override
 	public void tick(TimeBase<?> time) 
 	{
@@ -141,7 +175,7 @@ public TimeBase<?> readTime()
 	 * 				returned.
 	 * @return A writer suitable for writing doubles to a HistoryDoubleNode.
 	 */
-	public synchronized static IDoubleWriter openAsWriter(String id)
+	public static IDoubleWriter openAsWriter(String id)
 	{
 		return open(id).getInput(null);
 	}
@@ -154,7 +188,7 @@ public synchronized static IDoubleWriter openAsWriter(String id)
 	 * 				returned.
 	 * @return A writer suitable for reading doubles from a HistoryDoubleNode.
 	 */
-	public synchronized static IDoubleReader openAsReader(String id)
+	public static IDoubleReader openAsReader(String id)
 	{
 		return open(id);
 	}
@@ -165,7 +199,7 @@ public synchronized static IDoubleReader openAsReader(String id)
 	 * @param name The name to attach to the node. 
 	 * @return The node under that name.
 	 */
-	public synchronized static HistoryDoubleNode open(String name) 
+	public static HistoryDoubleNode open(String name) 
 	{
 		return DatastreamManager.open(HistoryDoubleNode.class, name);
 	}
@@ -0,0 +1,33 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+/**
+ * Writer able to take part in lazy evaluation (see {@link AbstractDoubleNode#setLazy(boolean)}).
+ * A lazy node does not write its values to such writers but just invalidates them, handing
+ * over itself as the source of the value. The writer (or rather the node behind it) reads the
+ * value from the source only if somebody reads the node.
+ * As only the latest value of the source is read, this is only suitable for nodes depending
+ * on the latest values of their inputs (e.g. {@link DoubleNode} or {@link DivNode}), not
+ * for nodes accumulating all values written (e.g. {@link SumNode} or {@link CounterNode}).
+ * Such nodes keep {@link ILazyDoubleWriter#acceptsInvalidation()} false and get every value
+ * written, even if they inherit this interface.
+ * 
+ * @author agent
+ */
+public interface ILazyDoubleWriter extends IDoubleWriter
+{
+	/**
+	 * Check whether the writer currently accepts invalidations instead of values.
+	 * 
+	 * @return true if the node behind the writer is in lazy mode and only depends on the
+	 * 			latest value written, false if it has to get every value.
+	 */
+	boolean acceptsInvalidation();
+	
+	/**
+	 * Mark the value of the writer as outdated. The writer reads the new value from the
+	 * given source when it is needed.
+	 * 
+	 * @param source The node holding the new value.
+	 */
+	void invalidate(IDoubleReader source);
+}
@@ -0,0 +1,41 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Writer accepting times as primitive nanoseconds and batches of values. All nodes of the
+ * framework implement this interface. Writers implementing {@link IDoubleWriter} only are
+ * still supported as successors: the nodes check for this interface and fall back to
+ * {@link IDoubleWriter#write(double, TimeBase)}, creating the time objects for them and
+ * writing batches value by value.
+ *
+ * @author agent
+ */
+public interface IPrimitiveDoubleWriter extends IDoubleWriter
+{
+	/**
+	 * Write a value to the object at a specific time given in nanoseconds. This is the
+	 * allocation-free variant of {@link IDoubleWriter#write(double, TimeBase)} intended for
+	 * producers writing at high rates. Nodes keep the primitive time and only create a
+	 * {@link TimeBase} object if somebody actually asks for it (e.g. via {@link IDoubleReader#readTime()}).
+	 *
+	 * @param value     The value to write.
+	 * @param timeNanos The time at which the value was written in nanoseconds (see {@link TimeBase#toNanos()}).
+	 * 					This time should not be in the future.
+	 */
+	void write(double value, long timeNanos);
+	
+	/**
+	 * Write a batch of values at once. This is equivalent to calling
+	 * {@link IPrimitiveDoubleWriter#write(double, long)} for each value in turn, but lets
+	 * nodes handle whole bursts of values natively (e.g. writing them through to their
+	 * successors as one batch and notifying observers once per batch only).
+	 * Implementers <em>MUST NOT</em> keep references to the given arrays.
+	 * 
+	 * @param values The array containing the values to write.
+	 * @param times  The array containing the time of each value in nanoseconds.
+	 * @param off    The index of the first value to write in both arrays.
+	 * @param len    The number of values to write.
+	 */
+	void writeBatch(double[] values, long[] times, int off, int len);
+}
@@ -0,0 +1,435 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Node computing count, mean, variance, standard deviation, minimum and maximum of the values
+ * written without keeping them (unlike {@link HistoryDoubleNode}). Mean and variance are
+ * updated with Welford's algorithm, which takes constant time per write and does not suffer
+ * from the cancellation of the naive sum of squares. NaN is ignored.
+ * Every statistic is available as a named output (see {@link Statistic}), which can be read
+ * and connected like any other node, e.g. to a {@link DivNode} input or a file node. Outputs
+ * without successors and observers cost nothing on writes. Outputs can be opened by name via
+ * {@link MomentsNode#openAsReader(String)} using names of the form "node/output" (e.g.
+ * "delay/stddev"). The output of the node itself is the mean.
+ * In lazy mode the statistics are only written to the successors of the outputs when these
+ * are read.
+ * Nodes can be merged (see {@link MomentsNode#merge(MomentsNode)}), so threads can record to
+ * instances of their own and the instances can be combined pairwise, in any order, afterwards.
+ * The methods of the node are synchronized.
+ *
+ * @author agent
+ */
+public class MomentsNode extends AbstractSimpleDoubleNode
+{
+	/**
+	 * The statistics available as outputs.
+	 */
+	public enum Statistic
+	{
+		COUNT("count"), MEAN("mean"), VARIANCE("variance"), STDDEV("stddev"), MIN("min"), MAX("max");
+
+		private final String mName;
+
+		private Statistic(String name)
+		{
+			mName = name;
+		}
+
+		/**
+		 * Get the name of the output.
+		 */
+		public String getName()
+		{
+			return mName;
+		}
+	}
+
+	/**
+	 * Named output of the node providing one statistic. It has no inputs of its own.
+	 */
+	public class Output extends AbstractDoubleNode
+	{
+		private final Statistic mStatistic;
+
+		Output(Statistic statistic)
+		{
+			mStatistic = statistic;
+		}
+
+		/**
+		 * Get the statistic of the output.
+		 */
+		public Statistic getStatistic()
+		{
+			return mStatistic;
+		}
+
+		/**
+		 * Get the node the output belongs to.
+		 */
+		public MomentsNode getNode()
+		{
+			return MomentsNode.this;
+		}
+
+		@Override
+		public double read()
+		{
+			return MomentsNode.this.read(mStatistic);
+		}
+
+		@Override
+		public TimeBase<?> readTime()
+		{
+			return MomentsNode.this.readTime();
+		}
+
+		@Override
+		public String[] getInputNames()
+		{
+			return null;
+		}
+
+		@Override
+		public IDoubleWriter getInput(String name)
+		{
+			throw new StreamException("Outputs do not have inputs. Error while trying to get input '"+name+"'.");
+		}
+
+		/**
+		 * Does nothing. The state of the output is reset with the node.
+		 */
+		@Override
+		public void reset()
+		{
+		}
+
+		boolean isUsed()
+		{
+			return !mSuccessors.isEmpty() || !mObservers.isEmpty();
+		}
+
+		void publish(TimeBase<?> time, long timeNanos)
+		{
+			if (!mSuccessors.isEmpty()) {
+				if (time != null) {
+					doWriteAll(read(), time);
+				}
+				else {
+					doWriteAll(read(), timeNanos);
+				}
+			}
+			doNotifyAll();
+		}
+	}
+
+	private final Output[] mOutputs;
+
+	private long   mCount;
+	private double mMean;
+	// sum of the squared differences from the mean
+	private double mM2;
+	private double mMin;
+	private double mMax;
+	private long   mTimeNanos;
+	private TimeBase<?> mTime;
+
+	public MomentsNode()
+	{
+		Statistic[] statistics = Statistic.values();
+		mOutputs = new Output[statistics.length];
+		for (int i = 0; i < statistics.length; i++) {
+			mOutputs[i] = new Output(statistics[i]);
+		}
+		reset();
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(1.0, time);
+	}
+
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		synchronized (this) {
+			if (!record(value)) {
+				return;
+			}
+			mTime = time;
+		}
+		propagate(time, 0);
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		synchronized (this) {
+			if (!record(value)) {
+				return;
+			}
+			mTime = null;
+			mTimeNanos = timeNanos;
+		}
+		propagate(null, timeNanos);
+	}
+
+	/**
+	 * Records the whole batch and propagates the statistics once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		if (len <= 0) {
+			return;
+		}
+		synchronized (this) {
+			for (int i = off; i < off+len; i++) {
+				record(values[i]);
+			}
+			mTime = null;
+			mTimeNanos = times[off+len-1];
+		}
+		propagate(null, times[off+len-1]);
+	}
+
+	private boolean record(double value)
+	{
+		if (Double.isNaN(value)) {
+			return false;
+		}
+		mCount++;
+		double delta = value-mMean;
+		mMean += delta/mCount;
+		mM2 += delta*(value-mMean);
+		if (value < mMin) {
+			mMin = value;
+		}
+		if (value > mMax) {
+			mMax = value;
+		}
+		return true;
+	}
+
+	private void propagate(TimeBase<?> time, long timeNanos)
+	{
+		if (isLazy()) {
+			doInvalidateAll();
+			for (int i = 0; i < mOutputs.length; i++) {
+				if (mOutputs[i].isUsed()) {
+					mOutputs[i].doInvalidateAll();
+				}
+			}
+			return;
+		}
+		if (!mSuccessors.isEmpty()) {
+			if (time != null) {
+				doWriteAll(read(), time);
+			}
+			else {
+				doWriteAll(read(), timeNanos);
+			}
+		}
+		doNotifyAll();
+		for (int i = 0; i < mOutputs.length; i++) {
+			if (mOutputs[i].isUsed()) {
+				mOutputs[i].publish(time, timeNanos);
+			}
+		}
+	}
+
+	/**
+	 * Get the mean of the values written (NaN if none).
+	 */
+	@Override
+	public double read()
+	{
+		return read(Statistic.MEAN);
+	}
+
+	/**
+	 * Get a statistic of the values written. Mean, minimum and maximum are NaN if no values
+	 * were written, variance and standard deviation if less than two values were written.
+	 *
+	 * @param statistic The statistic to get.
+	 * @return The value of the statistic.
+	 */
+	public synchronized double read(Statistic statistic)
+	{
+		switch (statistic) {
+		case COUNT:
+			return mCount;
+		case MEAN:
+			return mCount == 0 ? Double.NaN : mMean;
+		case VARIANCE:
+			return getVariance();
+		case STDDEV:
+			return Math.sqrt(getVariance());
+		case MIN:
+			return mCount == 0 ? Double.NaN : mMin;
+		default:
+			return mCount == 0 ? Double.NaN : mMax;
+		}
+	}
+
+	@Override
+	public synchronized TimeBase<?> readTime()
+	{
+		if (mTime == null && mCount > 0) {
+			mTime = StreamTime.fromNanos(mTimeNanos);
+		}
+		return mTime;
+	}
+
+	/**
+	 * Get the number of values written.
+	 */
+	public synchronized long getCount()
+	{
+		return mCount;
+	}
+
+	/**
+	 * Get the sample variance of the values written, i.e. the sum of the squared differences
+	 * from the mean divided by count-1 (NaN if less than two values were written).
+	 */
+	public synchronized double getVariance()
+	{
+		return mCount < 2 ? Double.NaN : mM2/(mCount-1);
+	}
+
+	/**
+	 * Get the output of a statistic.
+	 *
+	 * @param statistic The statistic.
+	 * @return The output providing the statistic.
+	 */
+	public Output getOutput(Statistic statistic)
+	{
+		return mOutputs[statistic.ordinal()];
+	}
+
+	/**
+	 * Get an output by name.
+	 *
+	 * @param name The name of the output (see {@link Statistic#getName()}).
+	 * @return The output providing the statistic.
+	 * @throws StreamException if there is no output with that name.
+	 */
+	public Output getOutput(String name)
+	{
+		for (int i = 0; i < mOutputs.length; i++) {
+			if (mOutputs[i].getStatistic().getName().equals(name)) {
+				return mOutputs[i];
+			}
+		}
+		throw new StreamException("Output '"+name+"' not defined for this node.");
+	}
+
+	/**
+	 * Add the values written to another node to this one, as if they had been written to this
+	 * node. The result is the same, up to rounding, no matter in which order nodes are merged.
+	 * Nothing is written to the successors.
+	 *
+	 * @param other The node to merge into this one. It is left unchanged.
+	 */
+	public void merge(MomentsNode other)
+	{
+		if (other == this) {
+			throw new StreamException("Cannot merge a node into itself.");
+		}
+		MomentsNode copy = other.snapshot(false);
+		synchronized (this) {
+			if (copy.mCount == 0) {
+				return;
+			}
+			if (mCount == 0 || copy.latest() > latest()) {
+				mTime = copy.mTime;
+				mTimeNanos = copy.mTimeNanos;
+			}
+			long count = mCount+copy.mCount;
+			double delta = copy.mMean-mMean;
+			mMean += delta*copy.mCount/count;
+			mM2 += copy.mM2+delta*delta*((double)mCount*copy.mCount/count);
+			mCount = count;
+			mMin = Math.min(mMin, copy.mMin);
+			mMax = Math.max(mMax, copy.mMax);
+		}
+	}
+
+	private long latest()
+	{
+		return mTime != null ? mTime.toNanos() : mTimeNanos;
+	}
+
+	/**
+	 * Get a copy of the node, e.g. to report the statistics of an interval.
+	 * The copy is not registered and has neither successors nor observers.
+	 *
+	 * @param reset true to reset this node afterwards, so the next snapshot contains the
+	 * 				values written since this one.
+	 * @return The copy.
+	 */
+	public synchronized MomentsNode snapshot(boolean reset)
+	{
+		MomentsNode copy = new MomentsNode();
+		copy.mCount = mCount;
+		copy.mMean = mMean;
+		copy.mM2 = mM2;
+		copy.mMin = mMin;
+		copy.mMax = mMax;
+		copy.mTime = mTime;
+		copy.mTimeNanos = mTimeNanos;
+		if (reset) {
+			reset();
+		}
+		return copy;
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		mCount = 0;
+		mMean = 0.0;
+		mM2 = 0.0;
+		mMin = Double.POSITIVE_INFINITY;
+		mMax = Double.NEGATIVE_INFINITY;
+		mTime = null;
+	}
+
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return open(id);
+	}
+
+	/**
+	 * Open a node or one of its outputs for reading.
+	 *
+	 * @param id The name of the node or "node/output" for an output (e.g. "delay/stddev").
+	 * @return The node (providing the mean) or the output.
+	 */
+	public static IDoubleReader openAsReader(String id)
+	{
+		int slash = id.indexOf('/');
+		if (slash < 0) {
+			return open(id);
+		}
+		return open(id.substring(0, slash)).getOutput(id.substring(slash+1));
+	}
+
+	/**
+	 * Open/create the node under the given name.
+	 *
+	 * @param name The name to attach to the node.
+	 * @return The node under that name.
+	 */
+	public static MomentsNode open(String name)
+	{
+		return DatastreamManager.open(MomentsNode.class, name);
+	}
+}
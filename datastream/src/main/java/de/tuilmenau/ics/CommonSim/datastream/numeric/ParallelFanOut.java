@@ -0,0 +1,281 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Policy of a node writing to its successors in parallel (see
+ * {@link AbstractDoubleNode#setFanOut(ParallelFanOut)}). The successors are split into
+ * groups of consecutive successors. All groups but the first are run on an executor while the
+ * writing thread runs the first group itself, and the write returns only after all groups
+ * are done. The successors of a node therefore still have received the value when the write
+ * returns, but the time spent in them is spread over several threads.
+ * This pays off for nodes having many successors that take some time each (e.g. files and
+ * histories), not for cheap successors, as every write hands work to other threads. The
+ * successors <em>MUST</em> be independent: a node reachable from two successors might be
+ * written by two threads at the same time.
+ * Note: the executor must be able to run the groups while the writing thread waits for them.
+ * A bounded executor that is busy with writes waiting themselves (e.g. of nested fan-outs) deadlocks.
+ *
+ * @author agent
+ */
+public final class ParallelFanOut
+{
+	private final Executor mExecutor;
+	private final int      mGroups;
+
+	/**
+	 * Create a policy running the groups on the executor of the {@link DatastreamManager}.
+	 *
+	 * @param groups The number of groups to split the successors into, e.g. the number of cores.
+	 */
+	public ParallelFanOut(int groups)
+	{
+		this(DatastreamManager.getInstance().getExecutor(), groups);
+	}
+
+	/**
+	 * Create a new policy.
+	 *
+	 * @param executor The executor running the groups. Any executor will do, e.g. a pool of
+	 * 					threads or one starting a virtual thread per task for I/O-bound successors.
+	 * @param groups   The number of groups to split the successors into.
+	 */
+	public ParallelFanOut(Executor executor, int groups)
+	{
+		if (groups <= 0) {
+			throw new IllegalArgumentException("Number of groups must be positive.");
+		}
+		mExecutor = executor;
+		mGroups = groups;
+	}
+
+	/**
+	 * Get the number of groups the successors are split into.
+	 */
+	public int getGroups()
+	{
+		return mGroups;
+	}
+
+	/**
+	 * Create the tasks of a node using this policy.
+	 *
+	 * @param context The manager of the node, which the groups run in.
+	 */
+	Tasks createTasks(DatastreamManager context)
+	{
+		return new Tasks(this, context);
+	}
+
+	/**
+	 * Tasks of a node writing to its successors in parallel. They are created once per node
+	 * and reused by every write, so writing does not allocate anything. The arguments of the
+	 * current write are handed to the groups via the fields, which the executor publishes to
+	 * the threads running the groups. The writing thread waits until the last group is done
+	 * and wakes it up. A node written by several threads at the same time (or again while
+	 * writing to its successors) uses the tasks for one write only and writes the others to
+	 * its successors serially.
+	 */
+	static final class Tasks
+	{
+		private final ParallelFanOut mPolicy;
+		// runs group i, for i > 0
+		private final Runnable[] mGroupTasks;
+		private final AtomicBoolean mBusy = new AtomicBoolean();
+		private final AtomicInteger mPending = new AtomicInteger();
+		private final AtomicReference<Throwable> mFailure = new AtomicReference<Throwable>();
+		private volatile Thread mWaiter;
+		// the current write (guarded by mBusy)
+		private IDoubleWriter[] mSuccessors;
+		private int             mGroups;
+		private double          mValue;
+		private TimeBase<?>     mTime;
+		private long            mTimeNanos;
+		private double[]        mValues;
+		private long[]          mTimes;
+		private int             mOff;
+		private int             mLen;
+
+		Tasks(ParallelFanOut policy, DatastreamManager context)
+		{
+			mPolicy = policy;
+			mGroupTasks = new Runnable[policy.mGroups];
+			for (int g = 1; g < mGroupTasks.length; g++) {
+				final int group = g;
+				mGroupTasks[g] = context.inContext(new Runnable() {
+					@Override
+					public void run()
+					{
+						runGroup(group);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Get the policy the tasks were created for.
+		 */
+		ParallelFanOut getPolicy()
+		{
+			return mPolicy;
+		}
+
+		/**
+		 * Write a value to the successors and wait until all of them are done.
+		 */
+		void write(IDoubleWriter[] successors, double value, TimeBase<?> time, long timeNanos)
+		{
+			if (!mBusy.compareAndSet(false, true)) {
+				for (int i = 0; i < successors.length; i++) {
+					write(successors[i], value, time, timeNanos);
+				}
+				return;
+			}
+			try {
+				mValues = null;
+				mValue = value;
+				mTime = time;
+				mTimeNanos = timeNanos;
+				run(successors);
+			}
+			finally {
+				mSuccessors = null;
+				mTime = null;
+				mBusy.set(false);
+			}
+		}
+
+		/**
+		 * Write a batch to the successors and wait until all of them are done.
+		 */
+		void writeBatch(IDoubleWriter[] successors, double[] values, long[] times, int off, int len)
+		{
+			if (!mBusy.compareAndSet(false, true)) {
+				for (int i = 0; i < successors.length; i++) {
+					AbstractDoubleNode.writeBatchTo(successors[i], values, times, off, len);
+				}
+				return;
+			}
+			try {
+				mValues = values;
+				mTimes = times;
+				mOff = off;
+				mLen = len;
+				run(successors);
+			}
+			finally {
+				mSuccessors = null;
+				mValues = null;
+				mTimes = null;
+				mBusy.set(false);
+			}
+		}
+
+		private void run(IDoubleWriter[] successors)
+		{
+			int groups = Math.min(mPolicy.mGroups, successors.length);
+			mSuccessors = successors;
+			mGroups = groups;
+			if (groups <= 1) {
+				writeGroup(0);
+				return;
+			}
+			mFailure.set(null);
+			mWaiter = Thread.currentThread();
+			mPending.set(groups-1);
+			for (int g = 1; g < groups; g++) {
+				try {
+					mPolicy.mExecutor.execute(mGroupTasks[g]);
+				}
+				catch (RuntimeException e) {
+					// rejected, run the group in this thread
+					runGroup(g);
+				}
+			}
+			try {
+				writeGroup(0);
+			}
+			finally {
+				await();
+			}
+			Throwable t = mFailure.getAndSet(null);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException)t;
+			}
+			if (t instanceof Error) {
+				throw (Error)t;
+			}
+			if (t != null) {
+				throw new StreamException("Writing to a successor failed: "+t);
+			}
+		}
+
+		private void runGroup(int group)
+		{
+			try {
+				writeGroup(group);
+			}
+			catch (Throwable t) {
+				mFailure.compareAndSet(null, t);
+			}
+			finally {
+				if (mPending.decrementAndGet() == 0) {
+					LockSupport.unpark(mWaiter);
+				}
+			}
+		}
+
+		private void writeGroup(int group)
+		{
+			IDoubleWriter[] successors = mSuccessors;
+			int from = bound(group, mGroups, successors.length);
+			int to = bound(group+1, mGroups, successors.length);
+			for (int i = from; i < to; i++) {
+				if (mValues != null) {
+					AbstractDoubleNode.writeBatchTo(successors[i], mValues, mTimes, mOff, mLen);
+				}
+				else {
+					write(successors[i], mValue, mTime, mTimeNanos);
+				}
+			}
+		}
+
+		private void await()
+		{
+			boolean interrupted = false;
+			while (mPending.get() != 0) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					interrupted = true;
+				}
+			}
+			mWaiter = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private static void write(IDoubleWriter successor, double value, TimeBase<?> time, long timeNanos)
+		{
+			if (time != null) {
+				successor.write(value, time);
+			}
+			else {
+				AbstractDoubleNode.writeTo(successor, value, timeNanos);
+			}
+		}
+	}
+
+	private static int bound(int group, int groups, int length)
+	{
+		return (int)((long)length*group/groups);
+	}
+}
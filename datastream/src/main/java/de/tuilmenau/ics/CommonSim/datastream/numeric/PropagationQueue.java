@@ -0,0 +1,168 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Work queue of the iterative propagation (see
+ * {@link de.tuilmenau.ics.CommonSim.datastream.DatastreamManager#setIterativePropagation(boolean)}).
+ * Instead of calling their successors, nodes append the pending writes to the queue of the
+ * current thread. The first write on a thread drains the queue in a loop, and the writes the
+ * successors cause are appended to the queue again instead of growing the stack. The stack
+ * depth is therefore bounded no matter how long the chains are, and the graph is traversed
+ * breadth-first: all successors of a node receive the value before any node further down.
+ * Invalidations of lazy successors (see {@link ILazyDoubleWriter}) are queued the same way.
+ * The queue is a ring buffer of primitive arrays growing as needed, so no objects are created
+ * per write.
+ * Some writes still call their successors directly and take one stack frame per node:
+ * <ul>
+ * <li>Batches, as the arrays of a batch are reused by the writing node and would have to be
+ * copied to be queued. Batches are meant for short, wide graphs anyway.</li>
+ * <li>The groups of a parallel fan-out (see {@link ParallelFanOut}). Every group runs on a
+ * thread of its own, and the writes it causes are queued on the queue of that thread, so
+ * every fan-out only adds a bounded number of frames.</li>
+ * <li>Object nodes, which are not covered by the iterative propagation at all.</li>
+ * </ul>
+ *
+ * @author agent
+ */
+final class PropagationQueue
+{
+	private static final ThreadLocal<PropagationQueue> sQueues = new ThreadLocal<PropagationQueue>() {
+		@Override
+		protected PropagationQueue initialValue()
+		{
+			return new PropagationQueue();
+		}
+	};
+
+	private IDoubleWriter[] mWriters = new IDoubleWriter[64];
+	private double[]        mValues = new double[64];
+	private TimeBase<?>[]   mTimes = new TimeBase<?>[64];
+	private long[]          mNanos = new long[64];
+	// source of the invalidation or null for writes
+	private IDoubleReader[] mSources = new IDoubleReader[64];
+	private int  mHead;
+	private int  mSize;
+	private boolean mDraining;
+
+	private PropagationQueue()
+	{
+	}
+
+	/**
+	 * Get the queue of the current thread.
+	 */
+	static PropagationQueue get()
+	{
+		return sQueues.get();
+	}
+
+	/**
+	 * Append a write to the queue.
+	 *
+	 * @param writer    The writer to write to.
+	 * @param value     The value to write.
+	 * @param time      The time of the value or null if the time is given in nanoseconds.
+	 * @param timeNanos The time of the value in nanoseconds if time is null.
+	 */
+	void add(IDoubleWriter writer, double value, TimeBase<?> time, long timeNanos)
+	{
+		if (mSize == mWriters.length) {
+			grow();
+		}
+		int i = (mHead+mSize) & (mWriters.length-1);
+		mWriters[i] = writer;
+		mValues[i] = value;
+		mTimes[i] = time;
+		mNanos[i] = timeNanos;
+		mSize++;
+	}
+
+	/**
+	 * Append an invalidation to the queue.
+	 *
+	 * @param writer The lazy writer to invalidate.
+	 * @param source The node holding the new value.
+	 */
+	void invalidate(ILazyDoubleWriter writer, IDoubleReader source)
+	{
+		if (mSize == mWriters.length) {
+			grow();
+		}
+		int i = (mHead+mSize) & (mWriters.length-1);
+		mWriters[i] = writer;
+		mSources[i] = source;
+		mSize++;
+	}
+
+	/**
+	 * Execute the queued writes unless the queue is drained further up the stack already,
+	 * in which case the writes are executed by that call.
+	 */
+	void drain()
+	{
+		if (mDraining) {
+			return;
+		}
+		mDraining = true;
+		try {
+			while (mSize > 0) {
+				int i = mHead;
+				IDoubleWriter writer = mWriters[i];
+				TimeBase<?> time = mTimes[i];
+				IDoubleReader source = mSources[i];
+				mWriters[i] = null;
+				mTimes[i] = null;
+				mSources[i] = null;
+				mHead = (i+1) & (mWriters.length-1);
+				mSize--;
+				if (source != null) {
+					((ILazyDoubleWriter)writer).invalidate(source);
+				}
+				else if (time != null) {
+					writer.write(mValues[i], time);
+				}
+				else {
+					AbstractDoubleNode.writeTo(writer, mValues[i], mNanos[i]);
+				}
+			}
+		}
+		finally {
+			if (mSize > 0) {
+				// a write failed, drop the writes depending on it
+				for (int i = 0; i < mWriters.length; i++) {
+					mWriters[i] = null;
+					mTimes[i] = null;
+					mSources[i] = null;
+				}
+				mSize = 0;
+			}
+			mHead = 0;
+			mDraining = false;
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = mWriters.length*2;
+		IDoubleWriter[] writers = new IDoubleWriter[capacity];
+		double[] values = new double[capacity];
+		TimeBase<?>[] times = new TimeBase<?>[capacity];
+		long[] nanos = new long[capacity];
+		IDoubleReader[] sources = new IDoubleReader[capacity];
+		for (int n = 0; n < mSize; n++) {
+			int i = (mHead+n) & (mWriters.length-1);
+			writers[n] = mWriters[i];
+			values[n] = mValues[i];
+			times[n] = mTimes[i];
+			nanos[n] = mNanos[i];
+			sources[n] = mSources[i];
+		}
+		mWriters = writers;
+		mValues = values;
+		mTimes = times;
+		mNanos = nanos;
+		mSources = sources;
+		mHead = 0;
+	}
+}
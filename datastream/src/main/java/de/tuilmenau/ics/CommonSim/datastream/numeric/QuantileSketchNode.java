@@ -0,0 +1,572 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Node estimating quantiles of the values written without knowing their range in advance.
+ * The values are summarized in a KLL sketch: a hierarchy of compactors, where the values of
+ * level h stand for 2^h values each. New values are appended to level 0 unsorted. When the
+ * sketch exceeds its capacity, the lowest full level is sorted and every other value is
+ * promoted to the next level. Memory is therefore bounded by about 3k values no matter how
+ * many values are written, and the rank error of the quantiles is about 1.7/k (roughly 1%
+ * with the default k of 200). Which half of a level is promoted alternates, so the sketch of
+ * a simulation run is reproducible.
+ * The output of the node is the quantile chosen at creation (the median by default). It is
+ * only computed again after a compaction or when the number of values written doubled since,
+ * and written to the successors unchanged in between, so a write costs the same whether or
+ * not successors (e.g. a {@link DivNode} or a file node) use the quantile. Other quantiles
+ * are computed whenever they are read via {@link QuantileSketchNode#read(double)} or the readers
+ * returned by {@link QuantileSketchNode#getQuantile(double)}. The levels above level 0 are
+ * sorted into a view that is only rebuilt after a compaction changed them, so computing a
+ * quantile between compactions just sorts the few values of level 0 and merges them with the view.
+ * Sketches with the same k can be merged, also in serialized form (see
+ * {@link QuantileSketchNode#toByteArray()}), e.g. to combine the sketches of several replications.
+ * The methods of the node are synchronized.
+ *
+ * @author agent
+ */
+public class QuantileSketchNode extends AbstractSimpleDoubleNode
+{
+	/**
+	 * The default accuracy parameter.
+	 */
+	public static final int DEFAULT_K = 200;
+
+	private static final int MIN_WIDTH = 8;
+	private static final int SERIAL_VERSION = 1;
+
+	private final int    mK;
+	private final double mQuantile;
+
+	private double[][] mLevels = new double[1][];
+	private int[]      mSizes = new int[1];
+	// which half of a level is promoted next
+	private boolean[]  mOdd = new boolean[1];
+	private int        mSize;
+	private int        mCapacity;
+	private long       mCount;
+	private double     mMin;
+	private double     mMax;
+	private long       mTimeNanos;
+	private TimeBase<?> mTime;
+
+	// quantile output and the number of values written when it was computed
+	private double  mOutput;
+	private long    mOutputCount;
+	private boolean mOutdated;
+
+	// sorted view of the levels above level 0 (null if outdated)
+	private double[] mSortedValues;
+	private long[]   mSortedWeights;
+
+	/**
+	 * Create a sketch with the default accuracy, outputting the median.
+	 */
+	public QuantileSketchNode()
+	{
+		this(DEFAULT_K, 0.5);
+	}
+
+	/**
+	 * Create a new sketch.
+	 *
+	 * @param k        The accuracy parameter. The rank error is about 1.7/k, the memory
+	 * 					needed about 3k values.
+	 * @param quantile The quantile the node outputs (between 0 and 1).
+	 */
+	public QuantileSketchNode(int k, double quantile)
+	{
+		if (k < MIN_WIDTH) {
+			throw new IllegalArgumentException("k must be at least "+MIN_WIDTH+".");
+		}
+		if (!(quantile >= 0.0 && quantile <= 1.0)) {
+			throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+		}
+		mK = k;
+		mQuantile = quantile;
+		reset();
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(1.0, time);
+	}
+
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		double output;
+		synchronized (this) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			insert(value);
+			mTime = time;
+			output = output();
+		}
+		propagate(output, time, 0);
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		double output;
+		synchronized (this) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			insert(value);
+			mTime = null;
+			mTimeNanos = timeNanos;
+			output = output();
+		}
+		propagate(output, null, timeNanos);
+	}
+
+	/**
+	 * Inserts the whole batch and propagates the quantile once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		if (len <= 0) {
+			return;
+		}
+		double output;
+		synchronized (this) {
+			for (int i = off; i < off+len; i++) {
+				if (!Double.isNaN(values[i])) {
+					insert(values[i]);
+				}
+			}
+			mTime = null;
+			mTimeNanos = times[off+len-1];
+			output = output();
+		}
+		propagate(output, null, times[off+len-1]);
+	}
+
+	/**
+	 * Get the quantile output, computing it again if a compaction changed the sketch or the
+	 * number of values doubled since it was computed.
+	 */
+	private double output()
+	{
+		if (mOutdated || mCount >= 2*mOutputCount) {
+			mOutput = read(mQuantile);
+			mOutputCount = mCount;
+			mOutdated = false;
+		}
+		return mOutput;
+	}
+
+	private void propagate(double output, TimeBase<?> time, long timeNanos)
+	{
+		if (isLazy()) {
+			doInvalidateAll();
+			return;
+		}
+		if (!mSuccessors.isEmpty()) {
+			if (time != null) {
+				doWriteAll(output, time);
+			}
+			else {
+				doWriteAll(output, timeNanos);
+			}
+		}
+		doNotifyAll();
+	}
+
+	private void insert(double value)
+	{
+		if (mSizes[0] == mLevels[0].length) {
+			mLevels[0] = Arrays.copyOf(mLevels[0], mLevels[0].length*2);
+		}
+		mLevels[0][mSizes[0]++] = value;
+		mSize++;
+		mCount++;
+		if (value < mMin) {
+			mMin = value;
+		}
+		if (value > mMax) {
+			mMax = value;
+		}
+		if (mSize >= mCapacity) {
+			compress();
+		}
+	}
+
+	/**
+	 * Compact levels until the sketch fits its capacity again.
+	 */
+	private void compress()
+	{
+		while (mSize >= mCapacity) {
+			for (int h = 0; h < mLevels.length; h++) {
+				if (mSizes[h] >= capacity(h)) {
+					if (h+1 == mLevels.length) {
+						addLevel();
+					}
+					compact(h);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sort a level and promote every other value to the next level.
+	 */
+	private void compact(int h)
+	{
+		double[] level = mLevels[h];
+		int size = mSizes[h];
+		Arrays.sort(level, 0, size);
+		int pairs = size/2*2;
+		int offset = mOdd[h] ? 1 : 0;
+		mOdd[h] = !mOdd[h];
+		int promoted = pairs/2;
+		ensure(h+1, mSizes[h+1]+promoted);
+		double[] next = mLevels[h+1];
+		int n = mSizes[h+1];
+		for (int i = offset; i < pairs; i += 2) {
+			next[n++] = level[i];
+		}
+		mSizes[h+1] = n;
+		// an odd value stays on this level
+		if (pairs < size) {
+			level[0] = level[size-1];
+		}
+		mSizes[h] = size-pairs;
+		mSize -= promoted;
+		mSortedValues = null;
+		mOutdated = true;
+	}
+
+	private void addLevel()
+	{
+		int levels = mLevels.length+1;
+		mLevels = Arrays.copyOf(mLevels, levels);
+		mSizes = Arrays.copyOf(mSizes, levels);
+		mOdd = Arrays.copyOf(mOdd, levels);
+		mLevels[levels-1] = new double[MIN_WIDTH];
+		updateCapacity();
+	}
+
+	private void ensure(int h, int size)
+	{
+		if (mLevels[h].length < size) {
+			mLevels[h] = Arrays.copyOf(mLevels[h], Math.max(size, mLevels[h].length*2));
+		}
+	}
+
+	/**
+	 * Get the capacity of a level. The top level holds k values, each level below 2/3 of the level above.
+	 */
+	private int capacity(int h)
+	{
+		int depth = mLevels.length-1-h;
+		return Math.max(MIN_WIDTH, (int)Math.ceil(mK*Math.pow(2.0/3.0, depth)));
+	}
+
+	private void updateCapacity()
+	{
+		int capacity = 0;
+		for (int h = 0; h < mLevels.length; h++) {
+			capacity += capacity(h);
+		}
+		mCapacity = capacity;
+	}
+
+	/**
+	 * Build the sorted view of the levels above level 0: their values in ascending order
+	 * with their weights.
+	 */
+	private void sort()
+	{
+		double[] values = new double[0];
+		long[] weights = new long[0];
+		for (int h = 1; h < mLevels.length; h++) {
+			if (mSizes[h] == 0) {
+				continue;
+			}
+			double[] level = Arrays.copyOf(mLevels[h], mSizes[h]);
+			Arrays.sort(level);
+			long weight = 1L << h;
+			double[] mergedValues = new double[values.length+level.length];
+			long[] mergedWeights = new long[mergedValues.length];
+			int i = 0;
+			int j = 0;
+			for (int n = 0; n < mergedValues.length; n++) {
+				if (j >= level.length || (i < values.length && values[i] <= level[j])) {
+					mergedValues[n] = values[i];
+					mergedWeights[n] = weights[i++];
+				}
+				else {
+					mergedValues[n] = level[j++];
+					mergedWeights[n] = weight;
+				}
+			}
+			values = mergedValues;
+			weights = mergedWeights;
+		}
+		mSortedValues = values;
+		mSortedWeights = weights;
+	}
+
+	/**
+	 * Get the quantile the node outputs, as written to the successors last.
+	 */
+	@Override
+	public synchronized double read()
+	{
+		if (mCount == 0) {
+			return Double.NaN;
+		}
+		return output();
+	}
+
+	/**
+	 * Estimate a quantile of the values written.
+	 *
+	 * @param quantile The quantile between 0 and 1 (e.g. 0.99 for the 99th percentile).
+	 * @return The estimated quantile or NaN if no values were written.
+	 */
+	public synchronized double read(double quantile)
+	{
+		if (mCount == 0) {
+			return Double.NaN;
+		}
+		if (quantile <= 0.0) {
+			return mMin;
+		}
+		if (quantile >= 1.0) {
+			return mMax;
+		}
+		if (mSortedValues == null) {
+			sort();
+		}
+		double[] level = mLevels[0];
+		int size = mSizes[0];
+		Arrays.sort(level, 0, size);
+		long rank = Math.max(1, (long)Math.ceil(quantile*mCount));
+		long seen = 0;
+		// merge the sorted view with level 0
+		double[] values = mSortedValues;
+		long[] weights = mSortedWeights;
+		int i = 0;
+		int j = 0;
+		while (i < values.length || j < size) {
+			double value;
+			if (j >= size || (i < values.length && values[i] <= level[j])) {
+				value = values[i];
+				seen += weights[i++];
+			}
+			else {
+				value = level[j++];
+				seen++;
+			}
+			if (seen >= rank) {
+				return value;
+			}
+		}
+		return mMax;
+	}
+
+	/**
+	 * Get a reader for a quantile of the node, e.g. to show several quantiles in a GUI.
+	 *
+	 * @param quantile The quantile between 0 and 1.
+	 * @return A reader estimating the quantile whenever it is read.
+	 */
+	public IDoubleReader getQuantile(final double quantile)
+	{
+		return new IDoubleReader() {
+			@Override
+			public double read()
+			{
+				return QuantileSketchNode.this.read(quantile);
+			}
+
+			@Override
+			public TimeBase<?> readTime()
+			{
+				return QuantileSketchNode.this.readTime();
+			}
+		};
+	}
+
+	@Override
+	public synchronized TimeBase<?> readTime()
+	{
+		if (mTime == null && mCount > 0) {
+			mTime = StreamTime.fromNanos(mTimeNanos);
+		}
+		return mTime;
+	}
+
+	/**
+	 * Get the number of values written.
+	 */
+	public synchronized long getCount()
+	{
+		return mCount;
+	}
+
+	/**
+	 * Get the number of values kept in the sketch.
+	 */
+	public synchronized int getRetained()
+	{
+		return mSize;
+	}
+
+	/**
+	 * Get the accuracy parameter of the sketch.
+	 */
+	public int getK()
+	{
+		return mK;
+	}
+
+	/**
+	 * Add the values summarized by another sketch to this one.
+	 *
+	 * @param other The sketch to merge into this one. It is left unchanged.
+	 * @throws StreamException if the sketches have different accuracy parameters.
+	 */
+	public void merge(QuantileSketchNode other)
+	{
+		if (other == this) {
+			throw new StreamException("Cannot merge a sketch into itself.");
+		}
+		merge(other.toByteArray());
+	}
+
+	/**
+	 * Add the values summarized by a serialized sketch to this one.
+	 *
+	 * @param state The state of a sketch as returned by {@link QuantileSketchNode#toByteArray()}.
+	 * @throws StreamException if the state is invalid or has a different accuracy parameter.
+	 */
+	public synchronized void merge(byte[] state)
+	{
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+			if (in.readInt() != SERIAL_VERSION) {
+				throw new StreamException("Unknown version of the serialized sketch.");
+			}
+			if (in.readInt() != mK) {
+				throw new StreamException("Cannot merge sketches with different k.");
+			}
+			long count = in.readLong();
+			double min = in.readDouble();
+			double max = in.readDouble();
+			int levels = in.readInt();
+			while (mLevels.length < levels) {
+				addLevel();
+			}
+			for (int h = 0; h < levels; h++) {
+				int size = in.readInt();
+				ensure(h, mSizes[h]+size);
+				for (int i = 0; i < size; i++) {
+					mLevels[h][mSizes[h]++] = in.readDouble();
+				}
+				mSize += size;
+			}
+			mCount += count;
+			mMin = Math.min(mMin, min);
+			mMax = Math.max(mMax, max);
+			mSortedValues = null;
+			mOutdated = true;
+			compress();
+		}
+		catch (IOException e) {
+			throw new StreamException("Invalid serialized sketch: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Serialize the state of the sketch, e.g. to merge the sketches of replications run in
+	 * other processes. The state does not include the time, the quantile output or the successors.
+	 *
+	 * @return The serialized state.
+	 */
+	public synchronized byte[] toByteArray()
+	{
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(32+8*mSize+4*mLevels.length);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(SERIAL_VERSION);
+			out.writeInt(mK);
+			out.writeLong(mCount);
+			out.writeDouble(mMin);
+			out.writeDouble(mMax);
+			out.writeInt(mLevels.length);
+			for (int h = 0; h < mLevels.length; h++) {
+				out.writeInt(mSizes[h]);
+				for (int i = 0; i < mSizes[h]; i++) {
+					out.writeDouble(mLevels[h][i]);
+				}
+			}
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			// cannot happen when writing to memory
+			throw new StreamException("Could not serialize sketch: "+e.getMessage());
+		}
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		mLevels = new double[1][];
+		mLevels[0] = new double[MIN_WIDTH];
+		mSizes = new int[1];
+		mOdd = new boolean[1];
+		mSize = 0;
+		mCount = 0;
+		mMin = Double.POSITIVE_INFINITY;
+		mMax = Double.NEGATIVE_INFINITY;
+		mTime = null;
+		mSortedValues = null;
+		mSortedWeights = null;
+		mOutput = Double.NaN;
+		mOutputCount = 0;
+		mOutdated = true;
+		updateCapacity();
+	}
+
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return open(id);
+	}
+
+	public static IDoubleReader openAsReader(String id)
+	{
+		return open(id);
+	}
+
+	/**
+	 * Open/create the node under the given name.
+	 *
+	 * @param name The name to attach to the node.
+	 * @return The node under that name.
+	 */
+	public static QuantileSketchNode open(String name)
+	{
+		return DatastreamManager.open(QuantileSketchNode.class, name);
+	}
+}
@@ -0,0 +1,217 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Counter for many threads incrementing it concurrently. Like {@link CounterNode} the counter
+ * is incremented or decremented in steps of one, but it is kept as an exact long striped over
+ * several cells instead of a double guarded by a lock. A write adds to the cell of the writing
+ * thread with a single atomic operation and never waits for other threads. Reading the node
+ * merges the cells. The cells are padded to lie in cache lines of their own.
+ * The node writes the merged count through to its successors and notifies its observers on
+ * every write, which again involves all threads. With a sample interval of n only every n-th
+ * write of a cell is propagated, so the successors just see samples of the count while
+ * {@link StripedCounterNode#read()} is always exact. If threads write concurrently, the
+ * successors and observers are called concurrently as well.
+ * Times are kept as nanoseconds, so time objects of types derived from {@link TimeBase} are
+ * not passed on as such. The time of the node is the latest time written.
+ *
+ * @author agent
+ */
+public class StripedCounterNode extends AbstractSimpleDoubleNode
+{
+	// longs per cell: the count, the number of writes and the latest time, padded to 64 bytes
+	static final int PAD = 8;
+	private static final int WRITES = 1;
+	private static final int TIME = 2;
+
+	private final AtomicLongArray mCells;
+	private final int mMask;
+	private final int mSampleInterval;
+	private volatile boolean mHasValue;
+
+	/**
+	 * Create a counter propagating every write.
+	 */
+	public StripedCounterNode()
+	{
+		this(1);
+	}
+
+	/**
+	 * Create a counter propagating samples.
+	 *
+	 * @param sampleInterval The number of writes to a cell per propagation (1 to propagate every write).
+	 */
+	public StripedCounterNode(int sampleInterval)
+	{
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException("Sample interval must be positive.");
+		}
+		int stripes = stripes();
+		mMask = stripes-1;
+		mSampleInterval = sampleInterval;
+		// one cell of padding in front of the first one to keep off the array header
+		mCells = new AtomicLongArray((stripes+1)*PAD);
+		clearTimes();
+	}
+
+	/**
+	 * Get the number of cells, which is the smallest power of two of at least twice the number of cores.
+	 */
+	static int stripes()
+	{
+		int stripes = 1;
+		while (stripes < 2*Runtime.getRuntime().availableProcessors()) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	/**
+	 * Get the index of the cell of the current thread.
+	 */
+	static int cell(int mask)
+	{
+		long id = Thread.currentThread().getId();
+		int h = (int)(id ^ (id >>> 32));
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return ((h & mask)+1)*PAD;
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(+1.0, time);
+	}
+
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		write(value, time.toNanos());
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		if (value == 0 || Double.isNaN(value)) {
+			// value == 0: do nothing
+			return;
+		}
+		if (add(value < 0 ? -1 : +1, timeNanos)) {
+			doWriteAll(read(), timeNanos);
+			doNotifyAll();
+		}
+	}
+
+	/**
+	 * Counts the whole batch with one atomic operation and propagates the count once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		long delta = 0;
+		long time = 0;
+		boolean counted = false;
+		for (int i = off; i < off+len; i++) {
+			if (values[i] < 0) {
+				delta--;
+			}
+			else if (values[i] > 0) {
+				delta++;
+			}
+			else {
+				continue;
+			}
+			time = times[i];
+			counted = true;
+		}
+		if (counted && add(delta, time)) {
+			doWriteAll(read(), time);
+			doNotifyAll();
+		}
+	}
+
+	/**
+	 * Add to the cell of the current thread.
+	 *
+	 * @return true if the write is to be propagated, false otherwise.
+	 */
+	private boolean add(long delta, long timeNanos)
+	{
+		int cell = cell(mMask);
+		mCells.getAndAdd(cell, delta);
+		mCells.lazySet(cell+TIME, timeNanos);
+		if (!mHasValue) {
+			mHasValue = true;
+		}
+		return mSampleInterval == 1 || mCells.incrementAndGet(cell+WRITES) % mSampleInterval == 0;
+	}
+
+	/**
+	 * Get the exact count.
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for (int i = PAD; i < mCells.length(); i += PAD) {
+			count += mCells.get(i);
+		}
+		return count;
+	}
+
+	@Override
+	public double read()
+	{
+		return getCount();
+	}
+
+	@Override
+	public TimeBase<?> readTime()
+	{
+		if (!mHasValue) {
+			return null;
+		}
+		long time = Long.MIN_VALUE;
+		for (int i = PAD; i < mCells.length(); i += PAD) {
+			time = Math.max(time, mCells.get(i+TIME));
+		}
+		return StreamTime.fromNanos(time);
+	}
+
+	/**
+	 * Reset the counter. Writes of other threads during the reset may or may not be counted.
+	 */
+	@Override
+	public void reset()
+	{
+		mHasValue = false;
+		for (int i = 0; i < mCells.length(); i++) {
+			mCells.set(i, 0);
+		}
+		clearTimes();
+	}
+	
+	private void clearTimes()
+	{
+		for (int i = PAD; i < mCells.length(); i += PAD) {
+			mCells.set(i+TIME, Long.MIN_VALUE);
+		}
+	}
+
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return DatastreamManager.open(StripedCounterNode.class, id);
+	}
+
+	public static IDoubleReader openAsReader(String id)
+	{
+		return DatastreamManager.open(StripedCounterNode.class, id);
+	}
+}
@@ -0,0 +1,177 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Sum for many threads writing to it concurrently. Unlike {@link SumNode} the sum is striped
+ * over a fixed number of cells instead of a single value guarded by a lock. A write adds to
+ * the cell of the writing thread with a compare-and-set and only retries if another thread
+ * hashed to the same cell wrote in between, so writes are never lost and rarely contend.
+ * Reading the node adds up the cells. Like in {@link StripedCounterNode} the number of cells
+ * depends on the number of cores only and the cells are padded to lie in cache lines of their own.
+ * The node writes the merged sum through to its successors and notifies its observers on
+ * every write, which again involves all threads. With a sample interval of n only every n-th
+ * write of a cell is propagated, so the successors just see samples of the sum while
+ * {@link StripedSumNode#read()} always includes all values written.
+ * If threads write concurrently, the successors and observers are called concurrently as well.
+ * Times are kept as nanoseconds, so time objects of types derived from {@link TimeBase} are
+ * not passed on as such. The time of the node is the latest time written.
+ *
+ * @author agent
+ */
+public class StripedSumNode extends AbstractSimpleDoubleNode
+{
+	// layout of a cell: the bits of the partial sum, the number of writes and the latest time
+	private static final int PAD = StripedCounterNode.PAD;
+	private static final int WRITES = 1;
+	private static final int TIME = 2;
+
+	private final AtomicLongArray mCells;
+	private final int mMask;
+	private final int mSampleInterval;
+	private volatile boolean mHasValue;
+
+	/**
+	 * Create a sum propagating every write.
+	 */
+	public StripedSumNode()
+	{
+		this(1);
+	}
+
+	/**
+	 * Create a sum propagating samples.
+	 *
+	 * @param sampleInterval The number of writes to a cell per propagation (1 to propagate every write).
+	 */
+	public StripedSumNode(int sampleInterval)
+	{
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException("Sample interval must be positive.");
+		}
+		int stripes = StripedCounterNode.stripes();
+		mMask = stripes-1;
+		mSampleInterval = sampleInterval;
+		// one cell of padding in front of the first one to keep off the array header
+		mCells = new AtomicLongArray((stripes+1)*PAD);
+		clearTimes();
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(1.0, time);
+	}
+
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		write(value, time.toNanos());
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		if (add(value, timeNanos)) {
+			doWriteAll(read(), timeNanos);
+			doNotifyAll();
+		}
+	}
+
+	/**
+	 * Adds the whole batch to the cell of the thread and propagates the sum once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		if (len <= 0) {
+			return;
+		}
+		double sum = 0.0;
+		for (int i = off; i < off+len; i++) {
+			sum += values[i];
+		}
+		if (add(sum, times[off+len-1])) {
+			doWriteAll(read(), times[off+len-1]);
+			doNotifyAll();
+		}
+	}
+
+	/**
+	 * Add to the cell of the current thread.
+	 *
+	 * @return true if the write is to be propagated, false otherwise.
+	 */
+	private boolean add(double value, long timeNanos)
+	{
+		int cell = StripedCounterNode.cell(mMask);
+		while (true) {
+			long bits = mCells.get(cell);
+			if (mCells.compareAndSet(cell, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits)+value))) {
+				break;
+			}
+		}
+		mCells.lazySet(cell+TIME, timeNanos);
+		if (!mHasValue) {
+			mHasValue = true;
+		}
+		return mSampleInterval == 1 || mCells.incrementAndGet(cell+WRITES) % mSampleInterval == 0;
+	}
+
+	@Override
+	public double read()
+	{
+		double sum = 0.0;
+		for (int i = PAD; i < mCells.length(); i += PAD) {
+			sum += Double.longBitsToDouble(mCells.get(i));
+		}
+		return sum;
+	}
+
+	@Override
+	public TimeBase<?> readTime()
+	{
+		if (!mHasValue) {
+			return null;
+		}
+		long time = Long.MIN_VALUE;
+		for (int i = PAD; i < mCells.length(); i += PAD) {
+			time = Math.max(time, mCells.get(i+TIME));
+		}
+		return StreamTime.fromNanos(time);
+	}
+
+	/**
+	 * Reset the sum. Values written by other threads during the reset may or may not be included.
+	 */
+	@Override
+	public void reset()
+	{
+		mHasValue = false;
+		for (int i = 0; i < mCells.length(); i++) {
+			mCells.set(i, 0);
+		}
+		clearTimes();
+	}
+
+	private void clearTimes()
+	{
+		for (int i = PAD; i < mCells.length(); i += PAD) {
+			mCells.set(i+TIME, Long.MIN_VALUE);
+		}
+	}
+
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return DatastreamManager.open(StripedSumNode.class, id);
+	}
+
+	public static IDoubleReader openAsReader(String id)
+	{
+		return DatastreamManager.open(StripedSumNode.class, id);
+	}
+}
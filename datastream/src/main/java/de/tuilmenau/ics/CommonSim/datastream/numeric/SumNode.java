@@ -16,6 +16,30 @@ public void write(double value, TimeBase<?> time)
 		super.write(super.read()+value, time);
 	}
 	
+	@Override 
+	public void write(double value, long timeNanos)
+	{
+		super.write(super.read()+value, timeNanos);
+	}
+	
+	@Override
+	public double step(IDoubleWriter input, double value, TimeBase<?> time, long timeNanos)
+	{
+		return super.step(input, super.read()+value, time, timeNanos);
+	}
+	
+	@Override 
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		double[] sums = getBatchBuffer(off+len);
+		double sum = super.read();
+		for (int i = off; i < off+len; i++) {
+			sum += values[i];
+			sums[i] = sum;
+		}
+		super.writeBatch(sums, times, off, len);
+	}
+	
 	/**
 	 * Open (or create) a writer under the given name for that node type. 
 	 * 
@@ -1,6 +1,7 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
@@ -8,51 +9,123 @@
  * buffer node that is intended to be read and written from multiple threads.
  * Use that for example to create nodes that are directly to be read from a 
  * GUI thread without getting corrupted results.
+ * The value and the time are published with a sequence lock: writers increment a sequence
+ * number before and after storing them, and readers retry if the number changed or was odd
+ * while they read. Readers therefore never take a lock and always get a value and time written
+ * together (see {@link SynchronizedDoubleNode#readSample()}). Writers only exclude each other
+ * while storing the value. Successors and observers are called without holding any lock, so
+ * concurrent writes may reach the successors in another order than they were stored.
  * 
  * @author Markus Brueckner
  */
 public class SynchronizedDoubleNode extends DoubleNode 
 {
+	private final Object mWriteLock = new Object();
+	// even while the fields are consistent, odd while a writer changes them
+	private volatile int         mSeq;
+	private volatile double      mValue;
+	private volatile TimeBase<?> mTime;
+	private volatile long        mTimeNanos;
+	private volatile boolean     mTimeIsNanos;
+	
 	@Override
-	public synchronized void connect(IDoubleWriter successor) 
+	public void tick(TimeBase<?> time) 
 	{
-		super.connect(successor);
+		write(1.0, time);
 	}
-	
+
 	@Override
-	public synchronized void disconnect(IDoubleWriter successor) 
+	public void write(double value, TimeBase<?> time) 
 	{
-		super.disconnect(successor);
+		publish(value, time, 0, false);
+		doWriteAll(value, time);
+		doNotifyAll();
 	}
-	
+
 	@Override
-	public synchronized void tick(TimeBase<?> time) 
+	public void write(double value, long timeNanos) 
 	{
-		super.write(1.0, time);
+		publish(value, null, timeNanos, true);
+		doWriteAll(value, timeNanos);
+		doNotifyAll();
 	}
 
 	@Override
-	public synchronized void write(double value, TimeBase<?> time) 
+	public void writeBatch(double[] values, long[] times, int off, int len) 
+	{
+		if (len <= 0) {
+			return;
+		}
+		publish(values[off+len-1], null, times[off+len-1], true);
+		doWriteAll(values, times, off, len);
+		doNotifyAll();
+	}
+	
+	/**
+	 * The node reads the value from a lazy predecessor right away, so readers never have
+	 * to wait for a predecessor.
+	 */
+	@Override
+	public void invalidate(IDoubleReader source) 
 	{
-		super.write(value, time);
+		TimeBase<?> time = source.readTime();
+		if (time != null) {
+			write(source.read(), time);
+		}
 	}
 
 	@Override
-	public synchronized double read() 
+	public double read() 
 	{
-		return super.read();
+		return mValue;
 	}
 
 	@Override
-	public synchronized TimeBase<?> readTime() 
+	public TimeBase<?> readTime() 
+	{
+		return readSample().time;
+	}
+	
+	/**
+	 * Read the value and the time of the node. In contrast to calling {@link SynchronizedDoubleNode#read()}
+	 * and {@link SynchronizedDoubleNode#readTime()} one after the other, the value and the time are
+	 * guaranteed to have been written together.
+	 * 
+	 * @return The value and the time of the node. The time is null if nothing was written yet.
+	 */
+	public HistoryDoubleNode.Tuple readSample()
 	{
-		return super.readTime();
+		while (true) {
+			int seq = mSeq;
+			if ((seq & 1) == 0) {
+				double value = mValue;
+				TimeBase<?> time = mTime;
+				long timeNanos = mTimeNanos;
+				boolean timeIsNanos = mTimeIsNanos;
+				if (seq == mSeq) {
+					return new HistoryDoubleNode.Tuple(timeIsNanos ? StreamTime.fromNanos(timeNanos) : time, value);
+				}
+			}
+			Thread.yield();
+		}
 	}
 	
 	@Override
-	public synchronized void reset() 
+	public void reset() 
+	{
+		publish(0.0, null, 0, false);
+	}
+	
+	private void publish(double value, TimeBase<?> time, long timeNanos, boolean timeIsNanos)
 	{
-		super.reset();
+		synchronized (mWriteLock) {
+			mSeq++;
+			mValue = value;
+			mTime = time;
+			mTimeNanos = timeNanos;
+			mTimeIsNanos = timeIsNanos;
+			mSeq++;
+		}
 	}
 	
 	/**
@@ -63,7 +136,7 @@ public synchronized void reset()
 	 * 				returned.
 	 * @return A writer suitable for writing doubles to a SynchronizedDoubleNode.
 	 */
-	public synchronized static IDoubleWriter openAsWriter(String id)
+	public static IDoubleWriter openAsWriter(String id)
 	{
 		return open(id).getInput(null);
 	}
@@ -76,7 +149,7 @@ public synchronized static IDoubleWriter openAsWriter(String id)
 	 * 				returned.
 	 * @return A writer suitable for reading doubles from a SynchronizedDoubleNode.
 	 */
-	public synchronized static IDoubleReader openAsReader(String id)
+	public static IDoubleReader openAsReader(String id)
 	{
 		return open(id);
 	}
@@ -87,7 +160,7 @@ public synchronized static IDoubleReader openAsReader(String id)
 	 * @param name The name to attach to the node. 
 	 * @return The node under that name.
 	 */
-	public synchronized static AbstractDoubleNode open(String name) 
+	public static AbstractDoubleNode open(String name) 
 	{
 		return DatastreamManager.open(SynchronizedDoubleNode.class, name);
 	}
@@ -0,0 +1,413 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Node aggregating the values written within a window of simulation time (e.g. the mean or
+ * the maximum of the last second). Two kinds of windows are supported:
+ * <ul>
+ * <li>Sliding windows: on every write the node outputs the aggregate of the values written
+ * within the window length up to the time of the write, i.e. in (t-length, t]. The values
+ * are kept in a ring buffer of primitives, and minima and maxima are tracked with a monotonic
+ * deque, so every write takes amortized constant time.</li>
+ * <li>Tumbling windows: the time is divided into consecutive windows of the given length
+ * starting at time 0. The node outputs the aggregate of a window once, when the first value
+ * of a later window is written (or {@link WindowAggregateNode#flush()} is called), at the
+ * end time of the window. Windows without values are skipped.</li>
+ * </ul>
+ * The times written must not decrease. Values written with an earlier time are treated as
+ * written at the latest time. Once the buffers have grown to the number of values per window,
+ * writes do not allocate anything.
+ * The aggregate of an empty window is 0 for {@link Aggregate#COUNT} and {@link Aggregate#SUM}
+ * and NaN otherwise.
+ * Nodes opened by name (e.g. via {@link WindowAggregateNode#openAsWriter(String)}) compute the
+ * mean over a sliding window of one second. To use another configuration, create the node
+ * and register it at the {@link DatastreamManager}.
+ *
+ * @author agent
+ */
+public class WindowAggregateNode extends AbstractSimpleDoubleNode
+{
+	/**
+	 * The aggregate computed over the values of a window.
+	 */
+	public enum Aggregate
+	{
+		COUNT, SUM, MEAN, MIN, MAX
+	}
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final long DEFAULT_LENGTH_NANOS = 1000000000L;
+
+	private final Aggregate mAggregate;
+	private final long      mLength;
+	private final boolean   mSliding;
+
+	// sliding windows: the values within the window, oldest first
+	private double[] mValues;
+	private long[]   mTimes;
+	private int      mHead;
+	private int      mSize;
+	// sliding windows: candidates for the minimum/maximum, decreasingly extreme
+	private double[] mDequeValues;
+	private long[]   mDequeTimes;
+	private int      mDequeHead;
+	private int      mDequeSize;
+
+	// tumbling windows: the state of the open window
+	private boolean mOpen;
+	private long    mWindowEnd;
+	private long    mCount;
+	private double  mMin;
+	private double  mMax;
+
+	// both: sum of the values in the window
+	private double  mSum;
+	private long    mLatest;
+
+	// end times of the windows closed by a batch
+	private long[]  mBatchTimes;
+
+	// the output
+	private double  mValue;
+	private long    mTimeNanos;
+	private boolean mHasValue;
+
+	/**
+	 * Create a node computing the mean over a sliding window of one second.
+	 */
+	public WindowAggregateNode()
+	{
+		this(Aggregate.MEAN, DEFAULT_LENGTH_NANOS, true);
+	}
+
+	/**
+	 * Create a new node.
+	 *
+	 * @param aggregate   The aggregate to compute.
+	 * @param lengthNanos The length of the windows in nanoseconds.
+	 * @param sliding     true for a sliding window, false for tumbling windows.
+	 */
+	public WindowAggregateNode(Aggregate aggregate, long lengthNanos, boolean sliding)
+	{
+		if (lengthNanos <= 0) {
+			throw new IllegalArgumentException("Window length must be positive.");
+		}
+		mAggregate = aggregate;
+		mLength = lengthNanos;
+		mSliding = sliding;
+		if (sliding) {
+			mValues = new double[INITIAL_CAPACITY];
+			mTimes = new long[INITIAL_CAPACITY];
+			if (aggregate == Aggregate.MIN || aggregate == Aggregate.MAX) {
+				mDequeValues = new double[INITIAL_CAPACITY];
+				mDequeTimes = new long[INITIAL_CAPACITY];
+			}
+		}
+		reset();
+	}
+
+	/**
+	 * Create a node with a sliding window.
+	 *
+	 * @param aggregate The aggregate to compute.
+	 * @param length    The length of the window.
+	 * @return The new node.
+	 */
+	public static WindowAggregateNode sliding(Aggregate aggregate, TimeBase<?> length)
+	{
+		return new WindowAggregateNode(aggregate, length.toNanos(), true);
+	}
+
+	/**
+	 * Create a node with tumbling windows.
+	 *
+	 * @param aggregate The aggregate to compute.
+	 * @param length    The length of the windows.
+	 * @return The new node.
+	 */
+	public static WindowAggregateNode tumbling(Aggregate aggregate, TimeBase<?> length)
+	{
+		return new WindowAggregateNode(aggregate, length.toNanos(), false);
+	}
+
+	@Override
+	public void tick(TimeBase<?> time)
+	{
+		write(1.0, time);
+	}
+
+	/**
+	 * Values written without a time are added at the latest time written so far.
+	 */
+	@Override
+	public void write(double value, TimeBase<?> time)
+	{
+		if (time != null) {
+			write(value, time.toNanos());
+		}
+		else {
+			write(value, mLatest == Long.MIN_VALUE ? 0 : mLatest);
+		}
+	}
+
+	@Override
+	public void write(double value, long timeNanos)
+	{
+		if (mSliding) {
+			mValue = addSliding(value, timeNanos);
+			mTimeNanos = mLatest;
+			mHasValue = true;
+			doWriteAll(mValue, mTimeNanos);
+			doNotifyAll();
+		}
+		else if (addTumbling(value, timeNanos)) {
+			doWriteAll(mValue, mTimeNanos);
+			doNotifyAll();
+		}
+	}
+
+	/**
+	 * Writes the outputs of the whole batch through as one batch and notifies the observers once.
+	 */
+	@Override
+	public void writeBatch(double[] values, long[] times, int off, int len)
+	{
+		if (len <= 0) {
+			return;
+		}
+		double[] outputs = getBatchBuffer(off+len);
+		if (mSliding) {
+			for (int i = off; i < off+len; i++) {
+				outputs[i] = addSliding(values[i], times[i]);
+			}
+			mValue = outputs[off+len-1];
+			mTimeNanos = mLatest;
+			mHasValue = true;
+			doWriteAll(outputs, times, off, len);
+			doNotifyAll();
+			return;
+		}
+		// closed windows are collected at the start of the buffers
+		if (mBatchTimes == null || mBatchTimes.length < len) {
+			mBatchTimes = new long[len];
+		}
+		long[] ends = mBatchTimes;
+		int closed = 0;
+		for (int i = off; i < off+len; i++) {
+			if (addTumbling(values[i], times[i])) {
+				outputs[closed] = mValue;
+				ends[closed] = mTimeNanos;
+				closed++;
+			}
+		}
+		if (closed > 0) {
+			doWriteAll(outputs, ends, 0, closed);
+			doNotifyAll();
+		}
+	}
+
+	/**
+	 * Output the aggregate of the open tumbling window now instead of waiting for a value of
+	 * a later window, e.g. at the end of a simulation run. Does nothing for sliding windows.
+	 */
+	public void flush()
+	{
+		if (!mSliding && mOpen) {
+			close();
+			doWriteAll(mValue, mTimeNanos);
+			doNotifyAll();
+		}
+	}
+
+	private double addSliding(double value, long timeNanos)
+	{
+		long time = Math.max(timeNanos, mLatest);
+		mLatest = time;
+		long start = time-mLength;
+		// drop the values that left the window
+		while (mSize > 0 && mTimes[mHead] <= start) {
+			mSum -= mValues[mHead];
+			mHead = (mHead+1) & (mValues.length-1);
+			mSize--;
+		}
+		if (mSize == 0) {
+			// avoid accumulating rounding errors
+			mSum = 0.0;
+		}
+		if (mSize == mValues.length) {
+			grow();
+		}
+		int tail = (mHead+mSize) & (mValues.length-1);
+		mValues[tail] = value;
+		mTimes[tail] = time;
+		mSize++;
+		mSum += value;
+
+		if (mDequeValues == null) {
+			return aggregate(mSize, mSum, Double.NaN, Double.NaN);
+		}
+		while (mDequeSize > 0 && mDequeTimes[mDequeHead] <= start) {
+			mDequeHead = (mDequeHead+1) & (mDequeValues.length-1);
+			mDequeSize--;
+		}
+		boolean max = mAggregate == Aggregate.MAX;
+		while (mDequeSize > 0) {
+			double last = mDequeValues[(mDequeHead+mDequeSize-1) & (mDequeValues.length-1)];
+			if (max ? last > value : last < value) {
+				break;
+			}
+			mDequeSize--;
+		}
+		int dequeTail = (mDequeHead+mDequeSize) & (mDequeValues.length-1);
+		mDequeValues[dequeTail] = value;
+		mDequeTimes[dequeTail] = time;
+		mDequeSize++;
+		double extreme = mDequeValues[mDequeHead];
+		return aggregate(mSize, mSum, extreme, extreme);
+	}
+
+	/**
+	 * Add a value to the open tumbling window.
+	 *
+	 * @return true if a window was closed, false otherwise.
+	 */
+	private boolean addTumbling(double value, long timeNanos)
+	{
+		long time = Math.max(timeNanos, mLatest);
+		mLatest = time;
+		boolean closed = false;
+		if (mOpen && time >= mWindowEnd) {
+			close();
+			closed = true;
+		}
+		if (!mOpen) {
+			mWindowEnd = time-(((time % mLength)+mLength) % mLength)+mLength;
+			mCount = 0;
+			mSum = 0.0;
+			mMin = Double.POSITIVE_INFINITY;
+			mMax = Double.NEGATIVE_INFINITY;
+			mOpen = true;
+		}
+		mCount++;
+		mSum += value;
+		mMin = Math.min(mMin, value);
+		mMax = Math.max(mMax, value);
+		return closed;
+	}
+
+	private void close()
+	{
+		mValue = aggregate(mCount, mSum, mMin, mMax);
+		mTimeNanos = mWindowEnd;
+		mHasValue = true;
+		mOpen = false;
+	}
+
+	private double aggregate(long count, double sum, double min, double max)
+	{
+		switch (mAggregate) {
+		case COUNT:
+			return count;
+		case SUM:
+			return sum;
+		case MEAN:
+			return count == 0 ? Double.NaN : sum/count;
+		case MIN:
+			return count == 0 ? Double.NaN : min;
+		default:
+			return count == 0 ? Double.NaN : max;
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = mValues.length*2;
+		double[] values = new double[capacity];
+		long[] times = new long[capacity];
+		for (int i = 0; i < mSize; i++) {
+			int j = (mHead+i) & (mValues.length-1);
+			values[i] = mValues[j];
+			times[i] = mTimes[j];
+		}
+		mValues = values;
+		mTimes = times;
+		mHead = 0;
+		if (mDequeValues != null) {
+			double[] dequeValues = new double[capacity];
+			long[] dequeTimes = new long[capacity];
+			for (int i = 0; i < mDequeSize; i++) {
+				int j = (mDequeHead+i) & (mDequeValues.length-1);
+				dequeValues[i] = mDequeValues[j];
+				dequeTimes[i] = mDequeTimes[j];
+			}
+			mDequeValues = dequeValues;
+			mDequeTimes = dequeTimes;
+			mDequeHead = 0;
+		}
+	}
+
+	/**
+	 * Get the aggregate of the window. For sliding windows this is the aggregate up to the
+	 * latest write, for tumbling windows the aggregate of the latest window closed.
+	 */
+	@Override
+	public double read()
+	{
+		return mValue;
+	}
+
+	/**
+	 * Get the time of the aggregate. For sliding windows this is the time of the latest
+	 * write, for tumbling windows the end time of the latest window closed.
+	 */
+	@Override
+	public TimeBase<?> readTime()
+	{
+		return mHasValue ? StreamTime.fromNanos(mTimeNanos) : null;
+	}
+
+	@Override
+	public void reset()
+	{
+		mHead = 0;
+		mSize = 0;
+		mDequeHead = 0;
+		mDequeSize = 0;
+		mOpen = false;
+		mSum = 0.0;
+		mLatest = Long.MIN_VALUE;
+		mValue = aggregate(0, 0.0, Double.NaN, Double.NaN);
+		mHasValue = false;
+	}
+
+	/**
+	 * Get the aggregate computed by the node.
+	 */
+	public Aggregate getAggregate()
+	{
+		return mAggregate;
+	}
+
+	/**
+	 * Check whether the node uses a sliding window.
+	 *
+	 * @return true for a sliding window, false for tumbling windows.
+	 */
+	public boolean isSliding()
+	{
+		return mSliding;
+	}
+
+	public static IDoubleWriter openAsWriter(String id)
+	{
+		return DatastreamManager.open(WindowAggregateNode.class, id);
+	}
+
+	public static IDoubleReader openAsReader(String id)
+	{
+		return DatastreamManager.open(WindowAggregateNode.class, id);
+	}
+}
@@ -1,37 +1,133 @@
 package de.tuilmenau.ics.CommonSim.datastream.object;
 
-import java.util.HashSet;
-
+import de.tuilmenau.ics.CommonSim.datastream.CoalescingNotifier;
+import de.tuilmenau.ics.CommonSim.datastream.CopyOnWriteArray;
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.ICompilable;
 import de.tuilmenau.ics.CommonSim.datastream.IObservable;
 import de.tuilmenau.ics.CommonSim.datastream.IObserver;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
-public abstract class AbstractObjectNode<ObjectType> implements IObjectNode<ObjectType>, IObjectReader<ObjectType>, IObservable
+public abstract class AbstractObjectNode<ObjectType> implements IObjectNode<ObjectType>, IObjectReader<ObjectType>, IObservable, ICompilable
 {
-	protected HashSet<IObserver> mObservers;
-	HashSet<IObjectWriter<ObjectType>> mSuccessors;
+	protected final CopyOnWriteArray<IObserver> mObservers = new CopyOnWriteArray<IObserver>(new IObserver[0]);
+	@SuppressWarnings("unchecked")
+	final CopyOnWriteArray<IObjectWriter<ObjectType>> mSuccessors = new CopyOnWriteArray<IObjectWriter<ObjectType>>((IObjectWriter<ObjectType>[])new IObjectWriter<?>[0]);
+	private boolean mCompiled;
+	private volatile boolean mElided;
+	private CoalescingNotifier mNotifier;
+	private volatile CoalescingNotifier.Slot mNotifierSlot;
+	// manager (context) the node was created in
+	private final DatastreamManager mManager = DatastreamManager.getInstance();
 
 	@Override
 	public void registerObserver(IObserver obs) 
 	{
-		mObservers.add(obs);
+		if (!mObservers.add(obs)) {
+			// TODO log warning message.
+		}
+		updateElision();
 	}
 
 	@Override
 	public void unregisterObserver(IObserver obs) 
 	{
-		mObservers.remove(obs);
+		if (!mObservers.remove(obs)) {
+			// TODO log warning message.
+		}
+		updateElision();
+	}
+	
+	/**
+	 * Successors and observers are kept in copy-on-write arrays, which already are the
+	 * flat dispatch tables of this node and are republished on every change. Compiling
+	 * therefore does not need to snapshot anything. A compiled node without successors
+	 * and observers is elided (see {@link #isElided()}).
+	 */
+	@Override
+	public void compile()
+	{
+		mCompiled = true;
+		updateElision();
+	}
+	
+	/**
+	 * Check whether the node is elided. A compiled node nobody consumes (i.e. without
+	 * successors and observers) skips writing through and notifying altogether. It still
+	 * keeps its own state, so reading the node returns the correct values. Connecting a
+	 * successor or registering an observer restores the write-through.
+	 * 
+	 * @return true if the node is elided, false otherwise.
+	 */
+	public boolean isElided()
+	{
+		return mElided;
+	}
+	
+	private synchronized void updateElision()
+	{
+		if (mCompiled) {
+			mElided = mSuccessors.isEmpty() && mObservers.isEmpty();
+		}
+	}
+	
+	/**
+	 * Attach the node to a notifier coalescing the notifications of the observers
+	 * (see {@link CoalescingNotifier}).
+	 * 
+	 * @param notifier The notifier to deliver the notifications. If null, observers
+	 * 					are notified synchronously on every change again.
+	 */
+	public synchronized void setNotifier(CoalescingNotifier notifier)
+	{
+		if (mNotifier != null) {
+			CoalescingNotifier.Slot slot = mNotifierSlot;
+			mNotifierSlot = null;
+			mNotifier.detach(slot);
+		}
+		mNotifier = notifier;
+		if (notifier != null) {
+			mNotifierSlot = notifier.attach(this, mObservers);
+		}
+	}
+	
+	/**
+	 * Get the notifier the node is attached to.
+	 * 
+	 * @return The notifier or null if observers are notified synchronously.
+	 */
+	public CoalescingNotifier getNotifier()
+	{
+		return mNotifier;
+	}
+	
+	@Override
+	public boolean isCompiled()
+	{
+		return mCompiled;
 	}
 
 	/**
 	 * Notify all observers about the fact that a new value was written.
 	 * This method is to be called by classes deriving from that class
 	 * whenever an update of the internal state of the node took place.
+	 * If the node is attached to a {@link CoalescingNotifier}, the node is
+	 * just marked as changed and the observers are notified by the notifier.
 	 */
 	protected void doNotifyAll() 
 	{
-		for (IObserver obs : mObservers) {
-			obs.notify(this);
+		if (mElided) {
+			return;
+		}
+		CoalescingNotifier.Slot slot = mNotifierSlot;
+		if (slot != null) {
+			slot.mark();
+			return;
+		}
+		IObserver[] observers = mObservers.get();
+		for (int i = 0; i < observers.length; i++) {
+			observers[i].notify(this);
 		}
 	}
 
@@ -47,9 +143,39 @@ protected void doNotifyAll()
 	 */
 	protected void doWriteAll(ObjectType value, TimeBase<?> time) 
 	{
-		if (mSuccessors != null) {
-			for (IObjectWriter<ObjectType> wr : mSuccessors) {
-				wr.write(value, time);
+		if (mElided) {
+			return;
+		}
+		IObjectWriter<ObjectType>[] successors = mSuccessors.get();
+		for (int i = 0; i < successors.length; i++) {
+			successors[i].write(value, time);
+		}
+	}
+
+	/**
+	 * Write-through a batch of objects to all successors. This is to be called by
+	 * nodes that received a batch via {@link IBatchObjectWriter#writeBatch(Object[], long[], int, int)}.
+	 * Successors not implementing {@link IBatchObjectWriter} get the objects one by one.
+	 * 
+	 * @param values the objects to write through to all successors.
+	 * @param times  the times of the objects in nanoseconds.
+	 * @param off    the index of the first object in both arrays.
+	 * @param len    the number of objects to write.
+	 */
+	protected void doWriteAll(ObjectType[] values, long[] times, int off, int len) 
+	{
+		if (mElided) {
+			return;
+		}
+		IObjectWriter<ObjectType>[] successors = mSuccessors.get();
+		for (int i = 0; i < successors.length; i++) {
+			if (successors[i] instanceof IBatchObjectWriter) {
+				((IBatchObjectWriter<ObjectType>)successors[i]).writeBatch(values, times, off, len);
+			}
+			else {
+				for (int j = off; j < off+len; j++) {
+					successors[i].write(values[j], StreamTime.fromNanos(times[j]));
+				}
 			}
 		}
 	}
@@ -57,19 +183,22 @@ protected void doWriteAll(ObjectType value, TimeBase<?> time)
 	@Override
 	public void connect(IObjectWriter<ObjectType> successor) 
 	{
-		if (mSuccessors == null) {
-			mSuccessors = new HashSet<IObjectWriter<ObjectType>>();
-		}
 		if (!mSuccessors.add(successor)) {
 			// TODO log warning message.
+			return;
 		}
+		updateElision();
+		mManager.connected(this, successor);
 	}
 
 	@Override
 	public void disconnect(IObjectWriter<ObjectType> successor) 
 	{
-		if (mSuccessors == null || !mSuccessors.remove(successor)) {
+		if (!mSuccessors.remove(successor)) {
 			// TODO log warning message
+			return;
 		}
+		updateElision();
+		mManager.disconnected(this, successor);
 	}
 }
@@ -1,9 +1,7 @@
 package de.tuilmenau.ics.CommonSim.datastream.object;
 
-import java.util.HashSet;
-
-import de.tuilmenau.ics.CommonSim.datastream.IObserver;
 import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 
 
 /**
@@ -14,15 +12,10 @@
  * 
  * @author Markus Brueckner.
  */
-public abstract class AbstractSimpleObjectNode<ObjectType> extends AbstractObjectNode<ObjectType> implements IObjectWriter<ObjectType>
+public abstract class AbstractSimpleObjectNode<ObjectType> extends AbstractObjectNode<ObjectType> implements IBatchObjectWriter<ObjectType>
 {
 	static final String[]  sInputNames = {};
 	
-	public AbstractSimpleObjectNode()
-	{
-		mObservers = new HashSet<IObserver>();
-	}
-	
 	@Override
 	public IObjectWriter<ObjectType> getInput(String name)
 	{
@@ -37,4 +30,16 @@ public String[] getInputNames()
 	{
 		return sInputNames;
 	}
+	
+	/**
+	 * Default implementation of the batch write path, writing the objects one by one.
+	 * Nodes able to handle whole batches override this method.
+	 */
+	@Override
+	public void writeBatch(ObjectType[] values, long[] times, int off, int len)
+	{
+		for (int i = off; i < off+len; i++) {
+			write(values[i], StreamTime.fromNanos(times[i]));
+		}
+	}
 }
@@ -0,0 +1,240 @@
+package de.tuilmenau.ics.CommonSim.datastream.object;
+
+import java.util.concurrent.Executor;
+
+import de.tuilmenau.ics.CommonSim.datastream.AsyncQueue;
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.OverflowPolicy;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Object node decoupling fast producers from slow successors (e.g. file nodes). Objects
+ * written to this node are put into a bounded queue and written through to the successors
+ * by a task running on an executor. The writing thread (e.g. the simulation) therefore never
+ * runs the successors itself. To put the node in front of a writer, connect the writer as a
+ * successor (see {@link AsyncObjectNode#AsyncObjectNode(IObjectWriter, Executor, int, OverflowPolicy)})
+ * and write to this node instead.
+ * Any number of threads may write to the node without locking (see {@link AsyncQueue}). The
+ * queued objects are handed to the successors in the order they were written, with observers
+ * being notified once per drained chunk.
+ * What happens if the queue is full is determined by the {@link OverflowPolicy} of the node.
+ * Times are queued as nanoseconds, so time objects of types derived from {@link TimeBase} are
+ * not passed on as such.
+ * 
+ * @param <ObjectType> The type of objects handled by the node.
+ *
+ * @author agent
+ */
+public class AsyncObjectNode<ObjectType> extends AbstractSimpleObjectNode<ObjectType>
+{
+	/**
+	 * Capacity of the queue of nodes created without giving one.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	// time queued for objects written without a time
+	private static final long NO_TIME = Long.MIN_VALUE;
+
+	/**
+	 * The queue, keeping the objects in the slots of an array and their times in a primitive one.
+	 */
+	private final class Queue extends AsyncQueue
+	{
+		private final Object[] mValues;
+		private final long[]   mTimes;
+		// the chunk handed to the successors (only used by the consumer)
+		private final Object[] mDrainValues;
+		private final long[]   mDrainTimes;
+
+		Queue(Executor executor, int capacity, OverflowPolicy policy)
+		{
+			super(executor, capacity, policy);
+			mValues = new Object[capacity];
+			mTimes = new long[capacity];
+			mDrainValues = new Object[capacity];
+			mDrainTimes = new long[capacity];
+		}
+
+		void offer(ObjectType value, long timeNanos)
+		{
+			long pos = claim();
+			if (pos >= 0) {
+				int slot = slot(pos);
+				mValues[slot] = value;
+				mTimes[slot] = timeNanos;
+				publish(pos);
+			}
+		}
+
+		@Override
+		protected void take(int slot, int index)
+		{
+			mDrainValues[index] = mValues[slot];
+			mDrainTimes[index] = mTimes[slot];
+			// do not keep references to objects already handed out
+			mValues[slot] = null;
+		}
+
+		@Override
+		protected void discard(int slot)
+		{
+			mValues[slot] = null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void deliver(int count)
+		{
+			for (int i = 0; i < count; i++) {
+				ObjectType value = (ObjectType)mDrainValues[i];
+				TimeBase<?> time = mDrainTimes[i] == NO_TIME ? null : StreamTime.fromNanos(mDrainTimes[i]);
+				mDrainValues[i] = null;
+				if (i == count-1) {
+					mValue = value;
+					mTime = time;
+				}
+				doWriteAll(value, time);
+			}
+			doNotifyAll();
+		}
+	}
+
+	private final Queue mQueue;
+
+	private volatile ObjectType  mValue;
+	private volatile TimeBase<?> mTime;
+
+	/**
+	 * Create a node with the default capacity, blocking producers if the queue is full and
+	 * draining on the executor of the {@link DatastreamManager}.
+	 */
+	public AsyncObjectNode()
+	{
+		this(DatastreamManager.getInstance().getExecutor(), DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Create a new node.
+	 *
+	 * @param executor The executor running the task writing the queued objects through to the successors.
+	 * 					Any executor will do, e.g. a single thread or one starting a virtual thread per task.
+	 * @param capacity The maximum number of objects in the queue.
+	 * @param policy   The behaviour if an object is written while the queue is full.
+	 */
+	public AsyncObjectNode(Executor executor, int capacity, OverflowPolicy policy)
+	{
+		mQueue = new Queue(executor, capacity, policy);
+	}
+
+	/**
+	 * Create a new node in front of the given writer.
+	 *
+	 * @param target   The writer to hand the objects to asynchronously. It is connected as a successor.
+	 * @param executor The executor running the task writing the queued objects through to the successors.
+	 * @param capacity The maximum number of objects in the queue.
+	 * @param policy   The behaviour if an object is written while the queue is full.
+	 */
+	public AsyncObjectNode(IObjectWriter<ObjectType> target, Executor executor, int capacity, OverflowPolicy policy)
+	{
+		this(executor, capacity, policy);
+		connect(target);
+	}
+
+	@Override
+	public void write(ObjectType value, TimeBase<?> time)
+	{
+		mQueue.offer(value, time == null ? NO_TIME : time.toNanos());
+	}
+
+	@Override
+	public void writeBatch(ObjectType[] values, long[] times, int off, int len)
+	{
+		for (int i = off; i < off+len; i++) {
+			mQueue.offer(values[i], times[i]);
+		}
+	}
+
+	/**
+	 * Write all objects queued so far through to the successors in the calling thread. This
+	 * is useful e.g. at the end of a simulation run to make sure all objects have arrived.
+	 */
+	public void flush()
+	{
+		mQueue.drain();
+	}
+
+	/**
+	 * Get the number of objects dropped or replaced because the queue was full.
+	 *
+	 * @return The number of objects lost so far.
+	 */
+	public long getDropped()
+	{
+		return mQueue.getDropped();
+	}
+
+	/**
+	 * Returns the object last written through to the successors.
+	 */
+	@Override
+	public ObjectType read()
+	{
+		return mValue;
+	}
+
+	/**
+	 * Returns the time of the object last written through to the successors.
+	 */
+	@Override
+	public TimeBase<?> readTime()
+	{
+		return mTime;
+	}
+
+	/**
+	 * Resets the node, discarding all objects still queued.
+	 */
+	@Override
+	public void reset()
+	{
+		mQueue.discardAll();
+		mValue = null;
+		mTime = null;
+		mQueue.resetDropped();
+	}
+
+	/**
+	 * Open/create a writer for objects under the given name.
+	 * 
+	 * @param id The name to create the type under.
+	 * @return A writer object suitable for writing to the node.
+	 */
+	public static IObjectWriter<Object> openAsWriter(String id)
+	{
+		return open(id);
+	}
+
+	/**
+	 * Open/create a reader for objects under the given name.
+	 * 
+	 * @param id The name to create the type under.
+	 * @return A reader object suitable for reading objects from the node.
+	 */
+	public static IObjectReader<Object> openAsReader(String id)
+	{
+		return open(id);
+	}
+
+	/**
+	 * Open/create the node under the given name.
+	 *
+	 * @param name The name to attach to the node.
+	 * @return The node under that name.
+	 */
+	@SuppressWarnings("unchecked")
+	public static AsyncObjectNode<Object> open(String name)
+	{
+		return DatastreamManager.open(AsyncObjectNode.class, name);
+	}
+}
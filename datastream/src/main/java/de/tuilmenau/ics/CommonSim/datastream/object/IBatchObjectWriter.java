@@ -0,0 +1,29 @@
+package de.tuilmenau.ics.CommonSim.datastream.object;
+
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Writer accepting batches of objects. All nodes of the framework implement this interface.
+ * Writers implementing {@link IObjectWriter} only are still supported as successors: the
+ * nodes check for this interface and fall back to writing the objects one by one via
+ * {@link IObjectWriter#write(Object, TimeBase)}.
+ *
+ * @param <ObjectType> The type of object that can be written to this writer
+ *
+ * @author agent
+ */
+public interface IBatchObjectWriter<ObjectType> extends IObjectWriter<ObjectType>
+{
+	/**
+	 * Write a batch of objects at once. This is equivalent to calling
+	 * {@link IObjectWriter#write(Object, TimeBase)} for each object in turn, but lets
+	 * nodes handle whole bursts of objects natively.
+	 * Implementers <em>MUST NOT</em> keep references to the given arrays.
+	 * 
+	 * @param values The array containing the objects to write.
+	 * @param times  The array containing the time of each object in nanoseconds.
+	 * @param off    The index of the first object to write in both arrays.
+	 * @param len    The number of objects to write.
+	 */
+	void writeBatch(ObjectType[] values, long[] times, int off, int len);
+}
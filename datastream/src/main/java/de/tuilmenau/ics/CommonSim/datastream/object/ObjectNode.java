@@ -1,6 +1,7 @@
 package de.tuilmenau.ics.CommonSim.datastream.object;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
@@ -22,6 +23,22 @@ public void write(Object value, TimeBase<?> time)
 		doNotifyAll();
 	}
 
+	/**
+	 * Writes the batch through to the successors as a whole. Afterwards the node
+	 * holds the last object of the batch and observers are notified once.
+	 */
+	@Override
+	public void writeBatch(Object[] values, long[] times, int off, int len) 
+	{
+		if (len <= 0) {
+			return;
+		}
+		mValue = values[off+len-1];
+		mTime = StreamTime.fromNanos(times[off+len-1]);
+		doWriteAll(values, times, off, len);
+		doNotifyAll();
+	}
+
 	@Override
 	public void reset() 
 	{
@@ -1,6 +1,7 @@
 package de.tuilmenau.ics.CommonSim.datastream.occurrences;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 import de.tuilmenau.ics.CommonSim.datastream.object.AbstractSimpleObjectNode;
 
@@ -24,6 +25,22 @@ public void write(IOccurrence occurrence, TimeBase<?> time)
 		doNotifyAll();
 	}
 
+	/**
+	 * Writes the batch through to the successors as a whole. Afterwards the node
+	 * holds the last object of the batch and observers are notified once.
+	 */
+	@Override
+	public void writeBatch(IOccurrence[] values, long[] times, int off, int len) 
+	{
+		if (len <= 0) {
+			return;
+		}
+		mOccurrence = values[off+len-1];
+		mTime = StreamTime.fromNanos(times[off+len-1]);
+		doWriteAll(values, times, off, len);
+		doNotifyAll();
+	}
+
 	@Override
 	public void reset() 
 	{
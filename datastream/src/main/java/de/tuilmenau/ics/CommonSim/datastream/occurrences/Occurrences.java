@@ -1,5 +1,6 @@
 package de.tuilmenau.ics.CommonSim.datastream.occurrences;
 
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
 import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
@@ -23,23 +24,15 @@ public class Occurrences
 	 */
 	public static final String PUBLISHER_NODE = "occurences";
 	
-	private static OccurrenceNode sPublisherNode;
-	
 	/**
-	 * Publish an occurrence to the global occurrence node.
+	 * Publish an occurrence to the global occurrence node of the current manager context
+	 * (see {@link DatastreamManager#getInstance()}).
 	 * 
 	 * @param occurence The occurrence to publish.
 	 * @param time      The time at which the occurrence was published
 	 */
 	public static void publish(IOccurrence occurence, TimeBase<?> time) 
 	{
-		if (sPublisherNode == null) {
-			synchronized (sPublisherNode) {
-				if (sPublisherNode == null) {
-					sPublisherNode = OccurrenceNode.open(PUBLISHER_NODE);
-				}
-			}
-		}
-		sPublisherNode.write(occurence, time);
+		OccurrenceNode.open(PUBLISHER_NODE).write(occurence, time);
 	}
 }
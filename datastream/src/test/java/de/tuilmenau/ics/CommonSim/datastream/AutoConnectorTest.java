@@ -151,4 +151,52 @@ public void connectMultitypeTest()
 		DoubleNode.openAsWriter("double.something1");
 		ObjectNode.openAsWriter("object.something2");
 	}
+	
+	/**
+	 * Test the determination of the literal prefixes of the input patterns.
+	 */
+	@Test
+	public void literalPrefixTest()
+	{
+		Assert.assertEquals("double.", AutoConnector.literalPrefix("double\\..*"));
+		Assert.assertEquals("", AutoConnector.literalPrefix(".+"));
+		Assert.assertEquals("ab", AutoConnector.literalPrefix("^abc?d"));
+		Assert.assertEquals("abc", AutoConnector.literalPrefix("abc+"));
+		Assert.assertEquals("a.b", AutoConnector.literalPrefix("\\Qa.b\\E\\d"));
+		Assert.assertEquals("", AutoConnector.literalPrefix("abc|abd"));
+		Assert.assertEquals("x", AutoConnector.literalPrefix("x(y)"));
+	}
+	
+	/**
+	 * Test whether a set of connectors connects like connectors attached separately.
+	 */
+	@Test
+	public void connectorSetTest()
+	{
+		AutoConnectorSet set = new AutoConnectorSet();
+		set.add(new AutoConnector("double\\.(.*)", "sum.$1", SumNode.class));
+		set.add(new AutoConnector("double\\.a.*", "sumA", SumNode.class));
+		set.add(new AutoConnector("(?:int|double)\\..*", "all", SumNode.class));
+		AutoConnector ignoring = new AutoConnector("obj.*", "objectOut", DoubleNode.class);
+		ignoring.setIgnoreErrors(true);
+		set.add(ignoring);
+		Assert.assertEquals(4, set.size());
+		
+		IDoubleWriter existing = DoubleNode.openAsWriter("double.b");
+		set.connectExisting();
+		DatastreamManager.getInstance().attachListener(set);
+		IDoubleWriter dw = DoubleNode.openAsWriter("double.a");
+		ObjectNode.openAsWriter("object.x");
+		
+		dw.write(1.0, StreamTime.ZERO);
+		existing.write(2.0, StreamTime.ZERO);
+		Assert.assertEquals(1.0, SumNode.openAsReader("sum.a").read());
+		Assert.assertEquals(2.0, SumNode.openAsReader("sum.b").read());
+		Assert.assertEquals(1.0, SumNode.openAsReader("sumA").read());
+		Assert.assertEquals(3.0, SumNode.openAsReader("all").read());
+		
+		Assert.assertTrue(set.remove(ignoring));
+		Assert.assertFalse(set.remove(ignoring));
+		Assert.assertEquals(3, set.size());
+	}
 }
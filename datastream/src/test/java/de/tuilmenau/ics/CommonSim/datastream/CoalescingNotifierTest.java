@@ -0,0 +1,121 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.numeric.DoubleNode;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.IDoubleReader;
+import de.tuilmenau.ics.CommonSim.datastream.object.ObjectNode;
+
+/**
+ * Test cases for the {@link CoalescingNotifier}
+ * 
+ * @author agent
+ */
+public class CoalescingNotifierTest
+{
+	private class CountingObserver implements IObserver
+	{
+		int mCount;
+		double mLast;
+		
+		@Override
+		public void notify(IObservable obs)
+		{
+			mCount++;
+			if (obs instanceof IDoubleReader) {
+				mLast = ((IDoubleReader)obs).read();
+			}
+		}
+	}
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	@Test
+	public void testManualDelivery()
+	{
+		DoubleNode node = new DoubleNode();
+		CountingObserver obs = new CountingObserver();
+		node.registerObserver(obs);
+		CoalescingNotifier notifier = new CoalescingNotifier();
+		node.setNotifier(notifier);
+		
+		for (int i = 1; i <= 1000; i++) {
+			node.write(i, StreamTime.ZERO);
+		}
+		Assert.assertEquals(0, obs.mCount);
+		notifier.deliver();
+		Assert.assertEquals(1, obs.mCount);
+		Assert.assertEquals(1000.0, obs.mLast);
+		notifier.deliver();
+		Assert.assertEquals(1, obs.mCount);
+		
+		// detaching delivers pending notifications and switches back to synchronous mode
+		node.write(1.0, StreamTime.ZERO);
+		node.setNotifier(null);
+		Assert.assertEquals(2, obs.mCount);
+		node.write(2.0, StreamTime.ZERO);
+		Assert.assertEquals(3, obs.mCount);
+	}
+	
+	@Test
+	public void testDirtyNodesOnly()
+	{
+		CoalescingNotifier notifier = new CoalescingNotifier();
+		DoubleNode[] nodes = new DoubleNode[100];
+		CountingObserver[] observers = new CountingObserver[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = new DoubleNode();
+			observers[i] = new CountingObserver();
+			nodes[i].registerObserver(observers[i]);
+			nodes[i].setNotifier(notifier);
+		}
+		nodes[7].write(1.0, StreamTime.ZERO);
+		nodes[42].write(2.0, StreamTime.ZERO);
+		nodes[7].write(3.0, StreamTime.ZERO);
+		notifier.deliver();
+		for (int i = 0; i < nodes.length; i++) {
+			Assert.assertEquals(i == 7 || i == 42 ? 1 : 0, observers[i].mCount);
+		}
+		Assert.assertEquals(3.0, observers[7].mLast);
+		
+		// a node detached while dirty is notified once and dropped from the list
+		nodes[7].write(4.0, StreamTime.ZERO);
+		nodes[7].setNotifier(null);
+		Assert.assertEquals(2, observers[7].mCount);
+		nodes[7].setNotifier(notifier);
+		nodes[7].write(5.0, StreamTime.ZERO);
+		notifier.deliver();
+		notifier.deliver();
+		Assert.assertEquals(3, observers[7].mCount);
+		Assert.assertEquals(1, observers[42].mCount);
+	}
+	
+	@Test
+	public void testPeriodicDelivery() throws InterruptedException
+	{
+		final CountDownLatch latch = new CountDownLatch(1);
+		ObjectNode node = new ObjectNode();
+		node.registerObserver(new IObserver() {
+			@Override
+			public void notify(IObservable obs)
+			{
+				latch.countDown();
+			}
+		});
+		CoalescingNotifier notifier = new CoalescingNotifier(1, TimeUnit.MILLISECONDS);
+		node.setNotifier(notifier);
+		node.write("test", StreamTime.ZERO);
+		Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		notifier.stop();
+	}
+}
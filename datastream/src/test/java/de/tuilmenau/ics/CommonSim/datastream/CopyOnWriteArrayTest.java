@@ -0,0 +1,45 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases for the {@link CopyOnWriteArray}
+ * 
+ * @author agent
+ */
+public class CopyOnWriteArrayTest 
+{
+	/**
+	 * Test adding and removing elements including duplicates.
+	 */
+	@Test
+	public void testAddRemove()
+	{
+		CopyOnWriteArray<String> a = new CopyOnWriteArray<String>(new String[0]);
+		Assert.assertTrue(a.isEmpty());
+		Assert.assertTrue(a.add("a"));
+		Assert.assertTrue(a.add("b"));
+		Assert.assertFalse(a.add("a"));
+		Assert.assertEquals(2, a.size());
+		Assert.assertArrayEquals(new String[] {"a", "b"}, a.get());
+		Assert.assertTrue(a.remove("a"));
+		Assert.assertFalse(a.remove("a"));
+		Assert.assertArrayEquals(new String[] {"b"}, a.get());
+	}
+	
+	/**
+	 * Test whether a snapshot obtained before a change stays untouched.
+	 */
+	@Test
+	public void testSnapshot()
+	{
+		CopyOnWriteArray<String> a = new CopyOnWriteArray<String>(new String[0]);
+		a.add("a");
+		String[] snapshot = a.get();
+		a.add("b");
+		a.remove("a");
+		Assert.assertArrayEquals(new String[] {"a"}, snapshot);
+		Assert.assertArrayEquals(new String[] {"b"}, a.get());
+	}
+}
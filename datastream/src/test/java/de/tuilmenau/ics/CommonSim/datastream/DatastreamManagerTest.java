@@ -1,14 +1,22 @@
 package de.tuilmenau.ics.CommonSim.datastream;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
 
 import de.tuilmenau.ics.CommonSim.datastream.annotations.AutoWire;
+import de.tuilmenau.ics.CommonSim.datastream.file.CSVFileNode;
 import de.tuilmenau.ics.CommonSim.datastream.numeric.DoubleNode;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.IDoubleReader;
 import de.tuilmenau.ics.CommonSim.datastream.numeric.IDoubleWriter;
 import de.tuilmenau.ics.CommonSim.datastream.numeric.SumNode;
 import de.tuilmenau.ics.CommonSim.datastream.object.IObjectWriter;
+import de.tuilmenau.ics.CommonSim.datastream.occurrences.IOccurrence;
+import de.tuilmenau.ics.CommonSim.datastream.occurrences.OccurrenceNode;
+import de.tuilmenau.ics.CommonSim.datastream.occurrences.Occurrences;
 
 /**
  * Test cases for the {@link DatastreamManager}
@@ -140,4 +148,370 @@ public Derived()
 		Assert.assertNotNull(d.field1);
 		Assert.assertNotNull(d.field2);
 	}
+	
+	/**
+	 * Test whether a compiled graph writes through and follows topology changes.
+	 */
+	@Test
+	public void testCompile()
+	{
+		DatastreamManager.clear();
+		IDoubleWriter wr = DoubleNode.openAsWriter("compile.in");
+		DoubleNode.open("compile.in").connect(SumNode.openAsWriter("compile.sum"));
+		DatastreamManager.getInstance().compile();
+		Assert.assertTrue(DatastreamManager.getInstance().isCompiled());
+		Assert.assertTrue(((ICompilable)wr).isCompiled());
+		
+		wr.write(1.0, StreamTime.ZERO);
+		IDoubleReader sum = SumNode.openAsReader("compile.sum");
+		Assert.assertEquals(1.0, sum.read(), 0.0);
+		
+		// nodes registered and connected after compiling take part as well
+		IDoubleWriter late = DoubleNode.openAsWriter("compile.late");
+		Assert.assertTrue(((ICompilable)late).isCompiled());
+		DoubleNode.open("compile.in").connect(late);
+		wr.write(2.0, StreamTime.ZERO);
+		Assert.assertEquals(3.0, sum.read(), 0.0);
+		Assert.assertEquals(2.0, DoubleNode.openAsReader("compile.late").read(), 0.0);
+		
+		DoubleNode.open("compile.in").disconnect(SumNode.openAsWriter("compile.sum"));
+		wr.write(4.0, StreamTime.ZERO);
+		Assert.assertEquals(3.0, sum.read(), 0.0);
+	}
+	
+	/**
+	 * Test whether threads opening the same names at once all get the same node and
+	 * listeners are notified once per node.
+	 */
+	@Test
+	public void testConcurrentOpen() throws InterruptedException
+	{
+		DatastreamManager.clear();
+		final AtomicInteger registered = new AtomicInteger();
+		DatastreamManager.getInstance().attachListener(new IStreamChangeListener() {
+			@Override
+			public void registered(String name, INode<?> node)
+			{
+				registered.incrementAndGet();
+			}
+			
+			@Override
+			public void unregistered(String name, INode<?> node)
+			{
+			}
+		});
+		final int threads = 8;
+		final int names = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final INode<?>[][] opened = new INode<?>[threads][names];
+		Thread[] t = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int idx = i;
+			t[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < names; j++) {
+						opened[idx][j] = DoubleNode.open("concurrent."+j);
+					}
+				}
+			};
+			t[i].start();
+		}
+		start.countDown();
+		for (int i = 0; i < threads; i++) {
+			t[i].join();
+		}
+		for (int j = 0; j < names; j++) {
+			for (int i = 1; i < threads; i++) {
+				Assert.assertSame(opened[0][j], opened[i][j]);
+			}
+		}
+		Assert.assertEquals(names, registered.get());
+		Assert.assertEquals(names, DatastreamManager.getInstance().getRegisteredNames().size());
+	}
+	
+	/**
+	 * Test looking up nodes by handle, including re-registration and handles of another manager.
+	 */
+	@Test
+	public void testHandles()
+	{
+		DatastreamManager.clear();
+		DatastreamManager m = DatastreamManager.getInstance();
+		NodeHandle[] handles = new NodeHandle[1000];
+		for (int i = 0; i < handles.length; i++) {
+			handles[i] = DatastreamManager.openHandle(DoubleNode.class, "handle."+i);
+		}
+		for (int i = 0; i < handles.length; i++) {
+			Assert.assertSame(m.get("handle."+i), m.get(handles[i]));
+			Assert.assertSame(handles[i], m.getHandle("handle."+i));
+			Assert.assertEquals("handle."+i, handles[i].getName());
+		}
+		
+		m.unregister("handle.1");
+		Assert.assertNull(m.get(handles[1]));
+		Assert.assertNull(m.getHandle("handle.1"));
+		// the slot is reused, but the old handle must not resolve to the new node
+		SumNode sum = new SumNode();
+		NodeHandle handle = m.register("handle.1", sum);
+		Assert.assertNotSame(handles[1], handle);
+		Assert.assertEquals(handles[1].getSlot(), handle.getSlot());
+		Assert.assertSame(sum, m.get(handle));
+		Assert.assertNull(m.get(handles[1]));
+		
+		DatastreamManager.clear();
+		Assert.assertNull(DatastreamManager.getInstance().get(handles[0]));
+	}
+	
+	/**
+	 * Test whether threads registering and unregistering at once keep the registry, the
+	 * handles and the name index consistent and whether slots are reused.
+	 */
+	@Test
+	public void testConcurrentRegistration() throws InterruptedException
+	{
+		DatastreamManager.clear();
+		final DatastreamManager m = DatastreamManager.getInstance();
+		final int threads = 8;
+		final int names = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		final NodeHandle[][] handles = new NodeHandle[threads][names];
+		Thread[] t = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int idx = i;
+			t[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int round = 0; round < 4; round++) {
+						for (int j = 0; j < names; j++) {
+							handles[idx][j] = m.register("reg."+idx+"."+j, new DoubleNode());
+						}
+						if (round < 3) {
+							for (int j = 0; j < names; j++) {
+								m.unregister("reg."+idx+"."+j);
+							}
+						}
+					}
+				}
+			};
+			t[i].start();
+		}
+		start.countDown();
+		for (int i = 0; i < threads; i++) {
+			t[i].join();
+		}
+		int maxSlot = 0;
+		for (int i = 0; i < threads; i++) {
+			for (int j = 0; j < names; j++) {
+				Assert.assertSame(handles[i][j], m.getHandle("reg."+i+"."+j));
+				Assert.assertSame(m.get("reg."+i+"."+j), m.get(handles[i][j]));
+				maxSlot = Math.max(maxSlot, handles[i][j].getSlot());
+			}
+		}
+		Assert.assertEquals(threads*names, m.getRegisteredNames().size());
+		Assert.assertEquals(threads*names, m.getRegisteredNames("reg.").size());
+		// without reuse the last round would get slots beyond 3*threads*names
+		Assert.assertTrue(maxSlot < 2*threads*names);
+	}
+	
+	/**
+	 * Test whether the topology queries follow connects and disconnects.
+	 */
+	@Test
+	public void testTopology()
+	{
+		DatastreamManager.clear();
+		DatastreamManager m = DatastreamManager.getInstance();
+		DoubleNode a = (DoubleNode)DoubleNode.open("topo.a");
+		SumNode b = DatastreamManager.open(SumNode.class, "topo.b");
+		CSVFileNode file = new CSVFileNode();
+		m.register("topo.file", file);
+		DoubleNode c = (DoubleNode)DoubleNode.open("topo.c");
+		a.connect(b);
+		a.connect(file.getInput("a"));
+		b.connect(file.getInput("b"));
+		
+		Assert.assertEquals(2, m.getSuccessors(a).size());
+		Assert.assertTrue(m.getSuccessors(a).contains(file));
+		Assert.assertEquals(2, m.getPredecessors(file).size());
+		Assert.assertTrue(m.getOutputs().contains(file));
+		Assert.assertTrue(m.getOutputs().contains(c));
+		Assert.assertFalse(m.getOutputs().contains(a));
+		Assert.assertEquals(3, m.getComponent(b).size());
+		Assert.assertEquals(2, m.getComponents().size());
+		
+		a.disconnect(b);
+		b.disconnect(file.getInput("b"));
+		Assert.assertTrue(m.getOutputs().contains(b));
+		Assert.assertEquals(1, m.getPredecessors(file).size());
+		Assert.assertEquals(1, m.getComponent(b).size());
+		Assert.assertEquals(3, m.getComponents().size());
+		
+		// writers not belonging to a registered node still count as successors
+		SumNode free = new SumNode();
+		b.connect(free.getInput(null));
+		Assert.assertFalse(m.getOutputs().contains(b));
+		// but unregistered nodes do not become part of the graph
+		free.connect(c);
+		Assert.assertFalse(m.getOutputs().contains(free));
+		Assert.assertTrue(m.getSuccessors(b).isEmpty());
+		Assert.assertTrue(m.getPredecessors(c).isEmpty());
+		Assert.assertEquals(3, m.getComponents().size());
+		b.disconnect(free.getInput(null));
+		Assert.assertTrue(m.getOutputs().contains(b));
+	}
+	
+	/**
+	 * Test whether unregistered nodes are removed from the topology.
+	 */
+	@Test
+	public void testUnregisterTopology()
+	{
+		DatastreamManager.clear();
+		DatastreamManager m = DatastreamManager.getInstance();
+		DoubleNode a = (DoubleNode)DoubleNode.open("topo.a");
+		DoubleNode b = (DoubleNode)DoubleNode.open("topo.b");
+		DoubleNode c = (DoubleNode)DoubleNode.open("topo.c");
+		a.connect(b);
+		b.connect(c);
+		Assert.assertEquals(1, m.getComponents().size());
+		
+		m.unregister("topo.b");
+		Assert.assertFalse(m.getOutputs().contains(b));
+		Assert.assertTrue(m.getSuccessors(a).isEmpty());
+		Assert.assertTrue(m.getPredecessors(c).isEmpty());
+		Assert.assertTrue(m.getComponent(b).isEmpty());
+		Assert.assertEquals(2, m.getComponents().size());
+		// a still writes to b, so it is not an output until it is disconnected
+		Assert.assertFalse(m.getOutputs().contains(a));
+		a.disconnect(b);
+		Assert.assertTrue(m.getOutputs().contains(a));
+		
+		m.unregister("topo.c");
+		Assert.assertFalse(m.getOutputs().contains(c));
+		Assert.assertEquals(1, m.getComponents().size());
+	}
+	
+	/**
+	 * Test whether nodes without consumers are elided and restored when a consumer is attached.
+	 */
+	@Test
+	public void testElision()
+	{
+		DatastreamManager.clear();
+		DoubleNode a = (DoubleNode)DoubleNode.open("elision.a");
+		Assert.assertFalse(a.isElided());
+		DatastreamManager.getInstance().compile();
+		Assert.assertTrue(a.isElided());
+		a.write(1.0, StreamTime.ZERO);
+		Assert.assertEquals(1.0, a.read(), 0.0);
+		
+		SumNode sum = new SumNode();
+		a.connect(sum);
+		Assert.assertFalse(a.isElided());
+		a.write(2.0, StreamTime.ZERO);
+		Assert.assertEquals(2.0, sum.read(), 0.0);
+		
+		a.disconnect(sum);
+		Assert.assertTrue(a.isElided());
+		IObserver obs = new IObserver() {
+			@Override
+			public void notify(IObservable obs)
+			{
+			}
+		};
+		a.registerObserver(obs);
+		Assert.assertFalse(a.isElided());
+		a.unregisterObserver(obs);
+		Assert.assertTrue(a.isElided());
+	}
+	
+	@Test
+	public void testContexts() throws InterruptedException
+	{
+		DatastreamManager.clear();
+		final int replications = 4;
+		final double[] results = new double[replications];
+		final IOccurrence[] occurrences = new IOccurrence[replications];
+		Thread[] threads = new Thread[replications];
+		for (int r = 0; r < replications; r++) {
+			final int replication = r;
+			threads[r] = new Thread() {
+				@Override
+				public void run()
+				{
+					DatastreamManager.bind(DatastreamManager.createContext());
+					try {
+						SumNode sum = DatastreamManager.open(SumNode.class, "sum");
+						for (int i = 0; i <= replication; i++) {
+							sum.write(1.0, i);
+						}
+						results[replication] = SumNode.openAsReader("sum").read();
+						Occurrences.publish(new IOccurrence() {
+							@Override
+							public Object getSource()
+							{
+								return replication;
+							}
+						}, StreamTime.ZERO);
+						occurrences[replication] = OccurrenceNode.open(Occurrences.PUBLISHER_NODE).read();
+					}
+					finally {
+						DatastreamManager.bind(null);
+					}
+				}
+			};
+			threads[r].start();
+		}
+		for (int r = 0; r < replications; r++) {
+			threads[r].join();
+		}
+		for (int r = 0; r < replications; r++) {
+			Assert.assertEquals(r+1.0, results[r]);
+			Assert.assertEquals(r, occurrences[r].getSource());
+		}
+		// the process-wide manager is untouched
+		Assert.assertNull(DatastreamManager.getInstance().get("sum"));
+		
+		// binding for a scope
+		DatastreamManager context = DatastreamManager.createContext();
+		DatastreamManager previous = DatastreamManager.bind(context);
+		Assert.assertNull(previous);
+		Assert.assertSame(context, DatastreamManager.getInstance());
+		Assert.assertSame(context, DatastreamManager.bind(previous));
+		Assert.assertNotSame(context, DatastreamManager.getInstance());
+		
+		// nodes keep the context they were created in
+		DatastreamManager.bind(context);
+		DoubleNode source = (DoubleNode)DoubleNode.open("source");
+		DoubleNode sink = (DoubleNode)DoubleNode.open("sink");
+		source.connect(sink);
+		context.setEpochMode(true);
+		DatastreamManager.bind(previous);
+		source.write(1.0, 1000L);
+		Assert.assertEquals(0.0, sink.read(), 0.0);
+		context.commitEpoch();
+		Assert.assertEquals(1.0, sink.read(), 0.0);
+		Assert.assertTrue(context.getSuccessors(source).contains(sink));
+		
+		// changes of the topology only concern the context of the nodes
+		int version = DatastreamManager.getInstance().getTopologyVersion();
+		int contextVersion = context.getTopologyVersion();
+		source.disconnect(sink);
+		Assert.assertEquals(version, DatastreamManager.getInstance().getTopologyVersion());
+		Assert.assertTrue(context.getTopologyVersion() != contextVersion);
+		Assert.assertTrue(context.getSuccessors(source).isEmpty());
+	}
 }
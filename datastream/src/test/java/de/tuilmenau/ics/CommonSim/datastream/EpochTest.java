@@ -0,0 +1,112 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.numeric.DivNode;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.DoubleNode;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.HistoryDoubleNode;
+
+/**
+ * Test cases for the epoch mode of the {@link DatastreamManager}
+ * 
+ * @author agent
+ */
+public class EpochTest
+{
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	/**
+	 * Test whether a node with two changed inputs emits once per time.
+	 */
+	@Test
+	public void testGlitchFree()
+	{
+		DatastreamManager m = DatastreamManager.getInstance();
+		m.setEpochMode(true);
+		DoubleNode a = new DoubleNode();
+		DoubleNode b = new DoubleNode();
+		DivNode div = new DivNode();
+		HistoryDoubleNode history = new HistoryDoubleNode();
+		a.connect(div.getInput("dividend"));
+		b.connect(div.getInput("divisor"));
+		div.connect(history);
+		
+		a.write(6.0, 1000);
+		b.write(3.0, 1000);
+		Assert.assertEquals(0, history.readHistory().size());
+		// the next time ends the epoch
+		a.write(8.0, 2000);
+		Assert.assertEquals(1, history.readHistory().size());
+		Assert.assertEquals(2.0, history.read());
+		Assert.assertEquals(1000, history.readTime().toNanos());
+		
+		m.commitEpoch();
+		Assert.assertEquals(2, history.readHistory().size());
+		Assert.assertEquals(8.0/3.0, history.read());
+		
+		// switching epoch mode off writes through immediately again
+		m.setEpochMode(false);
+		b.write(4.0, StreamTime.fromNanos(3000));
+		Assert.assertEquals(3, history.readHistory().size());
+		Assert.assertEquals(2.0, history.read());
+	}
+	
+	/**
+	 * Test whether writes without a time join the open epoch.
+	 */
+	@Test
+	public void testWithoutTime()
+	{
+		DatastreamManager m = DatastreamManager.getInstance();
+		m.setEpochMode(true);
+		DoubleNode a = new DoubleNode();
+		DoubleNode b = new DoubleNode();
+		a.connect(b);
+		
+		a.write(1.0, StreamTime.fromNanos(1000));
+		a.write(2.0, null);
+		Assert.assertEquals(0.0, b.read());
+		a.write(3.0, StreamTime.fromNanos(2000));
+		Assert.assertEquals(2.0, b.read());
+		m.commitEpoch();
+		Assert.assertEquals(3.0, b.read());
+		
+		// an epoch opened without a time ends with the first timed write
+		a.write(4.0, null);
+		Assert.assertEquals(3.0, b.read());
+		a.write(5.0, StreamTime.fromNanos(3000));
+		Assert.assertEquals(4.0, b.read());
+	}
+	
+	/**
+	 * Test whether nodes reached on several paths are processed after all their predecessors.
+	 */
+	@Test
+	public void testTopologicalOrder()
+	{
+		DatastreamManager m = DatastreamManager.getInstance();
+		DoubleNode a = new DoubleNode();
+		DoubleNode mid = new DoubleNode();
+		DivNode div = new DivNode();
+		HistoryDoubleNode history = new HistoryDoubleNode();
+		a.connect(mid);
+		mid.connect(div.getInput("dividend"));
+		a.connect(div.getInput("divisor"));
+		div.connect(history);
+		
+		m.setEpochMode(true);
+		a.write(4.0, 1000);
+		a.write(5.0, 1000);
+		m.commitEpoch();
+		Assert.assertEquals(1, history.readHistory().size());
+		Assert.assertEquals(1.0, history.read());
+		Assert.assertEquals(5.0, mid.read());
+	}
+}
@@ -0,0 +1,86 @@
+package de.tuilmenau.ics.CommonSim.datastream;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.numeric.DoubleNode;
+
+/**
+ * Test cases for the {@link NameIndex}
+ * 
+ * @author agent
+ */
+public class NameIndexTest
+{
+	private NameIndex createIndex()
+	{
+		NameIndex index = new NameIndex();
+		for (String name : new String[] { "router.1.queue", "router.1.drops", "router.12.queue", "router", "routes", "__hidden", "host.a.queue" }) {
+			Assert.assertTrue(index.add(name));
+		}
+		return index;
+	}
+	
+	@Test
+	public void testPrefix()
+	{
+		NameIndex index = createIndex();
+		Assert.assertFalse(index.add("router.1.queue"));
+		Assert.assertEquals(7, index.size());
+		Assert.assertEquals(Arrays.asList("router.1.drops", "router.1.queue", "router.12.queue"), index.getNames("router."));
+		Assert.assertEquals(Arrays.asList("router.1.drops", "router.1.queue", "router.12.queue"), index.getNames("router.1"));
+		Assert.assertEquals(Arrays.asList("router", "router.1.drops", "router.1.queue", "router.12.queue", "routes"), index.getNames("rou"));
+		Assert.assertEquals(Arrays.asList("__hidden"), index.getNames("__"));
+		Assert.assertTrue(index.getNames("x").isEmpty());
+		Assert.assertTrue(index.getNames("router.2").isEmpty());
+		Assert.assertEquals(7, index.getNames("").size());
+	}
+	
+	@Test
+	public void testRemove()
+	{
+		NameIndex index = createIndex();
+		Assert.assertTrue(index.remove("router.1.queue"));
+		Assert.assertFalse(index.remove("router.1.queue"));
+		Assert.assertFalse(index.remove("router.1"));
+		Assert.assertTrue(index.remove("router"));
+		Assert.assertFalse(index.contains("router"));
+		Assert.assertTrue(index.contains("router.1.drops"));
+		Assert.assertEquals(Arrays.asList("router.1.drops", "router.12.queue", "routes"), index.getNames("rou"));
+		Assert.assertEquals(5, index.size());
+		for (String name : index.getNames("")) {
+			Assert.assertTrue(index.remove(name));
+		}
+		Assert.assertEquals(0, index.size());
+		Assert.assertTrue(index.getNames("").isEmpty());
+	}
+	
+	@Test
+	public void testMatch()
+	{
+		NameIndex index = createIndex();
+		Assert.assertEquals(Arrays.asList("host.a.queue", "router.1.queue", "router.12.queue"), index.match("*.*.queue"));
+		Assert.assertEquals(Arrays.asList("router.1.queue"), index.match("router.?.queue"));
+		Assert.assertEquals(Arrays.asList("router.1.drops", "router.1.queue", "router.12.queue"), index.match("router.**"));
+		Assert.assertEquals(Arrays.asList("router", "routes"), index.match("rout*"));
+		Assert.assertEquals(Arrays.asList("routes"), index.match("routes"));
+		Assert.assertTrue(index.match("route").isEmpty());
+	}
+	
+	@Test
+	public void testManager()
+	{
+		DatastreamManager.clear();
+		DatastreamManager m = DatastreamManager.getInstance();
+		m.register("a.1", new DoubleNode());
+		m.register("a.2", new DoubleNode());
+		m.register("b.1", new DoubleNode());
+		Assert.assertEquals(Arrays.asList("a.1", "a.2"), m.getRegisteredNames("a."));
+		Assert.assertEquals(Arrays.asList("a.1", "b.1"), m.findRegisteredNames("*.1"));
+		m.unregister("a.1");
+		Assert.assertEquals(Arrays.asList("a.2"), m.getRegisteredNames("a."));
+	}
+}
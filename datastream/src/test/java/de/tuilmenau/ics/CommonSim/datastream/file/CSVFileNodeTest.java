@@ -11,6 +11,7 @@
 import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
 import de.tuilmenau.ics.CommonSim.datastream.numeric.IDoubleWriter;
 import de.tuilmenau.ics.CommonSim.datastream.object.IObjectWriter;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.IPrimitiveDoubleWriter;
 
 /**
  * Test cases for the CSV file node class.
@@ -42,4 +43,22 @@ public void testObject()
 		wr.write("Just a test", StreamTime.ZERO);
 		Assert.assertEquals("0.0;\"test2\";\"Just a test\"\n", sw.toString());
 	}
+	
+	@Test
+	public void testDoubleNanos()
+	{
+		StringWriter sw = new StringWriter();
+		IDoubleWriter wr = CSVFileNode.openAsDoubleWriter("test.test/test", sw);
+		((IPrimitiveDoubleWriter)wr).write(1.0, 2500000000L);
+		Assert.assertEquals("2.5;\"test\";1.0\n", sw.toString());
+	}
+	
+	@Test
+	public void testDoubleBatch()
+	{
+		StringWriter sw = new StringWriter();
+		IDoubleWriter wr = CSVFileNode.openAsDoubleWriter("test.test/test", sw);
+		((IPrimitiveDoubleWriter)wr).writeBatch(new double[] {1.0, 2.0}, new long[] {500000000L, 1000000000L}, 0, 2);
+		Assert.assertEquals("0.5;\"test\";1.0\n1.0;\"test\";2.0\n", sw.toString());
+	}
 }
@@ -0,0 +1,161 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.OverflowPolicy;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.HistoryDoubleNode.Tuple;
+
+/**
+ * Test cases for the {@link AsyncDoubleNode}
+ * 
+ * @author agent
+ */
+public class AsyncDoubleNodeTest 
+{
+	/**
+	 * Executor just collecting the tasks, so the test decides when the queue is drained.
+	 */
+	static class ManualExecutor implements Executor
+	{
+		List<Runnable> mTasks = new ArrayList<Runnable>();
+		
+		@Override
+		public void execute(Runnable command) 
+		{
+			mTasks.add(command);
+		}
+		
+		void runAll()
+		{
+			while (!mTasks.isEmpty()) {
+				mTasks.remove(0).run();
+			}
+		}
+	}
+	
+	/**
+	 * Test whether the values arrive at the successor in order once drained.
+	 */
+	@Test
+	public void testDrain()
+	{
+		ManualExecutor executor = new ManualExecutor();
+		HistoryDoubleNode history = new HistoryDoubleNode();
+		AsyncDoubleNode n = new AsyncDoubleNode(history, executor, 4, OverflowPolicy.BLOCK);
+		n.write(1.0, new StreamTime(1.0));
+		n.write(2.0, 2000000000L);
+		Assert.assertEquals(0, history.readHistory().size());
+		Assert.assertNull(n.readTime());
+		Assert.assertEquals(1, executor.mTasks.size());
+		executor.runAll();
+		Assert.assertEquals(2, history.readHistory().size());
+		Assert.assertEquals(1.0, history.readHistory().getFirst().value, 0.0);
+		Assert.assertEquals(2.0, history.readHistory().getLast().time.toSeconds(), 0.0);
+		Assert.assertEquals(2.0, n.read(), 0.0);
+		Assert.assertEquals(2.0, n.readTime().toSeconds(), 0.0);
+	}
+	
+	/**
+	 * Test the policies dropping values if the queue is full.
+	 */
+	@Test
+	public void testOverflow()
+	{
+		Assert.assertEquals("[1.0, 2.0, 3.0]", overflow(OverflowPolicy.DROP_NEWEST));
+		Assert.assertEquals("[3.0, 4.0, 5.0]", overflow(OverflowPolicy.DROP_OLDEST));
+		Assert.assertEquals("[1.0, 2.0, 5.0]", overflow(OverflowPolicy.SAMPLE));
+	}
+	
+	private String overflow(OverflowPolicy policy)
+	{
+		ManualExecutor executor = new ManualExecutor();
+		HistoryDoubleNode history = new HistoryDoubleNode();
+		AsyncDoubleNode n = new AsyncDoubleNode(history, executor, 3, policy);
+		n.writeBatch(new double[] {1.0, 2.0, 3.0, 4.0, 5.0}, new long[] {1, 2, 3, 4, 5}, 0, 5);
+		Assert.assertEquals(2, n.getDropped());
+		executor.runAll();
+		double[] result = new double[history.readHistory().size()];
+		int i = 0;
+		for (Tuple t : history.readHistory()) {
+			result[i++] = t.value;
+		}
+		return Arrays.toString(result);
+	}
+	
+	/**
+	 * Test whether several producers blocking on a small queue get all their values
+	 * through to a successor drained by another thread.
+	 */
+	@Test
+	public void testBlocking() throws InterruptedException
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final SumNode sum = new SumNode();
+		final AsyncDoubleNode n = new AsyncDoubleNode(sum, executor, 8, OverflowPolicy.BLOCK);
+		Thread[] producers = new Thread[4];
+		for (int i = 0; i < producers.length; i++) {
+			producers[i] = new Thread() {
+				@Override
+				public void run() 
+				{
+					for (int j = 0; j < 10000; j++) {
+						n.write(1.0, j);
+					}
+				}
+			};
+			producers[i].start();
+		}
+		for (Thread t : producers) {
+			t.join();
+		}
+		n.flush();
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		Assert.assertEquals(40000.0, sum.read(), 0.0);
+		Assert.assertEquals(0, n.getDropped());
+	}
+	
+	/**
+	 * Test whether every value written by concurrent producers is either delivered or
+	 * counted as dropped while the queue is drained concurrently.
+	 */
+	@Test
+	public void testConcurrentDrop() throws InterruptedException
+	{
+		for (OverflowPolicy policy : new OverflowPolicy[] { OverflowPolicy.DROP_OLDEST, OverflowPolicy.DROP_NEWEST }) {
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			final CounterNode counter = new CounterNode();
+			final AsyncDoubleNode n = new AsyncDoubleNode(counter, executor, 8, policy);
+			Thread[] producers = new Thread[4];
+			for (int i = 0; i < producers.length; i++) {
+				producers[i] = new Thread() {
+					@Override
+					public void run() 
+					{
+						for (int j = 0; j < 10000; j++) {
+							n.write(1.0, j);
+						}
+					}
+				};
+				producers[i].start();
+			}
+			for (Thread t : producers) {
+				t.join();
+			}
+			n.flush();
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			Assert.assertEquals(40000.0, counter.read()+n.getDropped(), 0.0);
+		}
+	}
+}
@@ -1,11 +1,15 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
 import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
  * Unit test for the DoubleNode  
@@ -57,4 +61,95 @@ public void connectionTest()
 		mWriter.write(1.5, StreamTime.ZERO);
 		Assert.assertEquals(1.5, DoubleNode.openAsReader("test2").read(), 0.0);
 	}
+	
+	/**
+	 * Test whether successors can be attached and detached while another thread writes
+	 * through the node.
+	 */
+	@Test
+	public void concurrentConnectTest() throws InterruptedException
+	{
+		final AbstractDoubleNode node = DoubleNode.open("test");
+		final Throwable[] failure = new Throwable[1];
+		Thread writer = new Thread() {
+			@Override
+			public void run()
+			{
+				try {
+					for (int i = 0; i < 200000; i++) {
+						mWriter.write(i, StreamTime.ZERO);
+					}
+				}
+				catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		writer.start();
+		IDoubleWriter[] succs = new IDoubleWriter[16];
+		for (int i = 0; i < succs.length; i++) {
+			succs[i] = new DoubleNode();
+		}
+		while (writer.isAlive()) {
+			for (IDoubleWriter succ : succs) {
+				node.connect(succ);
+			}
+			for (IDoubleWriter succ : succs) {
+				node.disconnect(succ);
+			}
+		}
+		writer.join();
+		Assert.assertNull(failure[0]);
+		node.connect(succs[0]);
+		mWriter.write(2.5, StreamTime.ZERO);
+		Assert.assertEquals(2.5, ((IDoubleReader)succs[0]).read(), 0.0);
+	}
+	
+	/**
+	 * Test whether a value written with a primitive time is saved and written
+	 * through correctly.
+	 */
+	@Test
+	public void testNanos()
+	{
+		IDoubleWriter succ = DoubleNode.openAsWriter("test2");
+		DoubleNode.open("test").connect(succ);
+		((IPrimitiveDoubleWriter)mWriter).write(1.25, 1500000000L);
+		Assert.assertEquals(1.25, mReader.read(), 0.0);
+		Assert.assertEquals(1.5, mReader.readTime().toSeconds(), 0.0);
+		Assert.assertEquals(1.5, DoubleNode.openAsReader("test2").readTime().toSeconds(), 0.0);
+		// a later write with a time object must replace the primitive time
+		mWriter.write(2.0, new StreamTime(3.0));
+		Assert.assertEquals(3.0, mReader.readTime().toSeconds(), 0.0);
+	}
+	
+	/**
+	 * Test whether writers accepting time objects only get primitive times and
+	 * batches as single writes with time objects.
+	 */
+	@Test
+	public void testPlainWriter()
+	{
+		final List<TimeBase<?>> times = new ArrayList<TimeBase<?>>();
+		IDoubleWriter plain = new IDoubleWriter() {
+			@Override
+			public void write(double value, TimeBase<?> time)
+			{
+				times.add(time);
+			}
+			
+			@Override
+			public void tick(TimeBase<?> time)
+			{
+				write(1.0, time);
+			}
+		};
+		DoubleNode node = new DoubleNode();
+		node.connect(plain);
+		node.write(1.0, 1000L);
+		node.writeBatch(new double[] {2.0, 3.0}, new long[] {2000L, 3000L}, 0, 2);
+		Assert.assertEquals(3, times.size());
+		Assert.assertEquals(1000L, times.get(0).toNanos());
+		Assert.assertEquals(3000L, times.get(2).toNanos());
+	}
 }
@@ -49,4 +49,23 @@ public void multiWrite()
 		mWriter.write(1.5, StreamTime.ZERO);
 		Assert.assertEquals(2.5, mReader.read());
 	}
+	
+	/**
+	 * Test checking that a batch is summed up value by value and every partial sum
+	 * is written through
+	 */
+	@Test
+	public void batchWrite()
+	{
+		HistoryDoubleNode history = new HistoryDoubleNode();
+		((SumNode)mWriter).connect(history);
+		mWriter.write(1.0, StreamTime.ZERO);
+		((IPrimitiveDoubleWriter)mWriter).writeBatch(new double[] {0.0, 0.5, 1.5, 2.0}, new long[] {0, 1, 2, 3}, 1, 2);
+		Assert.assertEquals(3.0, mReader.read());
+		Assert.assertEquals(3, history.readHistory().size());
+		HistoryDoubleNode.Tuple[] values = history.readHistory().toArray(new HistoryDoubleNode.Tuple[3]);
+		Assert.assertEquals(1.5, values[1].value);
+		Assert.assertEquals(3.0, history.readHistory().getLast().value);
+		Assert.assertEquals(2, history.readHistory().getLast().time.toNanos());
+	}
 }
@@ -0,0 +1,97 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.IObserver;
+import de.tuilmenau.ics.CommonSim.datastream.IObservable;
+
+/**
+ * Test cases for the fusion of linear node chains
+ *
+ * @author agent
+ */
+public class FusedChainTest
+{
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+
+	@Test
+	public void testChain()
+	{
+		DoubleNode producer = new DoubleNode();
+		SumNode sum = new SumNode();
+		DivNode div = new DivNode();
+		HistoryDoubleNode history = new HistoryDoubleNode(100);
+		producer.connect(sum);
+		sum.connect(div.getInput("dividend"));
+		div.connect(history);
+		((IPrimitiveDoubleWriter)div.getInput("divisor")).write(2.0, 0);
+		producer.compile();
+
+		double expected = 0.0;
+		for (int i = 1; i <= 10; i++) {
+			producer.write(i, 1000*i);
+			expected += i;
+			Assert.assertEquals(expected, sum.read());
+			Assert.assertEquals(expected/2.0, div.read());
+			Assert.assertEquals(expected/2.0, history.read());
+			Assert.assertEquals(1000*i, div.readTime().toNanos());
+		}
+		Assert.assertEquals(2, producer.getFusedLength());
+		// one entry for setting the divisor
+		Assert.assertEquals(11, history.readHistory().size());
+	}
+
+	@Test
+	public void testObserverDissolvesChain()
+	{
+		DoubleNode producer = new DoubleNode();
+		SumNode sum = new SumNode();
+		DoubleNode out = new DoubleNode();
+		producer.connect(sum);
+		sum.connect(out);
+		producer.compile();
+		producer.write(1.0, 1000);
+		Assert.assertEquals(2, producer.getFusedLength());
+
+		final int[] notified = new int[1];
+		sum.registerObserver(new IObserver() {
+			@Override
+			public void notify(IObservable source)
+			{
+				notified[0]++;
+			}
+		});
+		Assert.assertEquals(0, producer.getFusedLength());
+		producer.write(2.0, 2000);
+		Assert.assertEquals(1, notified[0]);
+		Assert.assertEquals(3.0, out.read());
+		// the producer fuses nothing as its successor is observed now
+		Assert.assertEquals(0, producer.getFusedLength());
+	}
+
+	@Test
+	public void testDerivedNodesNotFused()
+	{
+		DoubleNode producer = new DoubleNode();
+		DoubleNode derived = new DoubleNode() {
+			@Override
+			public void write(double value, long timeNanos)
+			{
+				super.write(2*value, timeNanos);
+			}
+		};
+		producer.connect(derived);
+		producer.compile();
+		producer.write(1.0, 1000);
+		Assert.assertEquals(0, producer.getFusedLength());
+		Assert.assertEquals(2.0, derived.read());
+	}
+}
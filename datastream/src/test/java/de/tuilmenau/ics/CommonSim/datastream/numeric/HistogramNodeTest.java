@@ -0,0 +1,95 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+
+/**
+ * Test cases for the histogram node
+ * 
+ * @author agent
+ */
+public class HistogramNodeTest
+{
+	private static final double ERROR = 1.0/(1 << (HistogramNode.DEFAULT_PRECISION+1));
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	private static void assertRelative(double expected, double actual)
+	{
+		Assert.assertTrue("expected "+expected+" but was "+actual, Math.abs(actual-expected) <= expected*ERROR);
+	}
+	
+	@Test
+	public void testPercentiles()
+	{
+		HistogramNode histogram = HistogramNode.open("delay");
+		DoubleNode out = new DoubleNode();
+		histogram.connect(out);
+		Assert.assertTrue(Double.isNaN(histogram.read()));
+		for (int i = 1; i <= 10000; i++) {
+			HistogramNode.open("delay").write(i*1e-3, i);
+		}
+		Assert.assertEquals(10.0, out.read());
+		Assert.assertEquals(10000, histogram.getCount());
+		Assert.assertEquals(1e-3, histogram.getMin());
+		Assert.assertEquals(10.0, histogram.getMax());
+		Assert.assertEquals(5.0005, histogram.getMean(), 1e-9);
+		assertRelative(5.0, histogram.read());
+		assertRelative(9.0, histogram.read(0.9));
+		assertRelative(9.9, histogram.read(0.99));
+		assertRelative(0.01, histogram.read(0.001));
+		Assert.assertEquals(10.0, histogram.read(1.0));
+		Assert.assertEquals(10000, histogram.readTime().toNanos());
+	}
+	
+	@Test
+	public void testMergeAndSnapshot()
+	{
+		HistogramNode all = new HistogramNode();
+		HistogramNode odd = new HistogramNode();
+		HistogramNode even = new HistogramNode();
+		for (int i = 1; i <= 1000; i++) {
+			all.write(i*1e-4, i);
+			(i % 2 == 0 ? even : odd).write(i*1e-4, i);
+		}
+		// values out of range and NaN
+		all.write(0.0, 1001);
+		odd.write(0.0, 1001);
+		all.write(1e6, 1002);
+		even.write(1e6, 1002);
+		all.write(Double.NaN, 1003);
+		
+		HistogramNode merged = odd.snapshot(false);
+		merged.merge(even);
+		Assert.assertEquals(all.getCount(), merged.getCount());
+		Assert.assertEquals(all.getMin(), merged.getMin());
+		Assert.assertEquals(all.getMax(), merged.getMax());
+		for (double q = 0.0; q <= 1.0; q += 0.01) {
+			Assert.assertEquals(all.read(q), merged.read(q));
+		}
+		
+		HistogramNode interval = all.snapshot(true);
+		Assert.assertEquals(1002, interval.getCount());
+		Assert.assertEquals(0, all.getCount());
+		Assert.assertNull(all.readTime());
+		all.write(0.5, 2000);
+		Assert.assertEquals(0.5, all.read());
+		
+		try {
+			all.merge(new HistogramNode(1e-3, 1e3, 3));
+			Assert.fail("Merged histograms of different layout");
+		}
+		catch (StreamException e) {
+			// expected
+		}
+	}
+}
@@ -76,4 +76,38 @@ public void testWriteThrough()
 		Assert.assertEquals(3.5, h2.getLast().value);
 		Assert.assertEquals(1.5, h2.getLast().time.toSeconds());		
 	}
+	
+	/**
+	 * Check whether values written with a primitive time end up in the history
+	 */
+	@Test
+	public void testNanos()
+	{
+		HistoryDoubleNode n  = new HistoryDoubleNode();
+		HistoryDoubleNode n2 = new HistoryDoubleNode();
+		n.connect(n2);
+		n.write(1.25, 1000000000L);
+		n.write(3.5, new StreamTime(1.5));
+		Assert.assertEquals(1.0, n.readHistory().getFirst().time.toSeconds());
+		Assert.assertEquals(1.0, n2.readHistory().getFirst().time.toSeconds());
+		Assert.assertEquals(3.5, n2.read());
+		Assert.assertEquals(1.5, n2.readTime().toSeconds());
+	}
+	
+	/**
+	 * Check whether batches are added to the history and written through as a whole
+	 */
+	@Test
+	public void testBatch()
+	{
+		HistoryDoubleNode n  = new HistoryDoubleNode(3);
+		HistoryDoubleNode n2 = new HistoryDoubleNode();
+		n.connect(n2);
+		n.writeBatch(new double[] {1.0, 2.0, 3.0, 4.0}, new long[] {1000, 2000, 3000, 4000}, 0, 4);
+		Assert.assertEquals(3, n.readHistory().size());
+		Assert.assertEquals(2.0, n.readHistory().getFirst().value);
+		Assert.assertEquals(4, n2.readHistory().size());
+		Assert.assertEquals(4.0, n2.read());
+		Assert.assertEquals(4000, n2.readTime().toNanos());
+	}
 }
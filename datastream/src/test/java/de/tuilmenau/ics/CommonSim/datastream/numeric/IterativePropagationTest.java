@@ -0,0 +1,115 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Test cases for the iterative propagation
+ * 
+ * @author agent
+ */
+public class IterativePropagationTest
+{
+	/**
+	 * Writer recording the order of the writes. It does not accept primitive times or
+	 * batches, so nodes fall back to writing time objects to it.
+	 */
+	private static class Recorder implements IDoubleWriter
+	{
+		private final List<Integer> mLog;
+		private final int mId;
+		
+		Recorder(List<Integer> log, int id)
+		{
+			mLog = log;
+			mId = id;
+		}
+		
+		@Override
+		public void write(double value, TimeBase<?> time)
+		{
+			mLog.add(mId);
+		}
+		
+		@Override
+		public void tick(TimeBase<?> time)
+		{
+			mLog.add(mId);
+		}
+	}
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	@Test
+	public void testDeepChain()
+	{
+		DatastreamManager.getInstance().setIterativePropagation(true);
+		DoubleNode head = new DoubleNode();
+		AbstractDoubleNode last = head;
+		for (int i = 0; i < 100000; i++) {
+			DoubleNode next = new DoubleNode();
+			last.connect(next);
+			last = next;
+		}
+		head.write(1.0, 1000);
+		head.write(2.0, 2000);
+		Assert.assertEquals(2.0, last.read());
+		Assert.assertEquals(2000, last.readTime().toNanos());
+	}
+	
+	@Test
+	public void testDeepLazyChain()
+	{
+		DatastreamManager.getInstance().setIterativePropagation(true);
+		DoubleNode head = new DoubleNode();
+		head.setLazy(true);
+		List<DoubleNode> nodes = new ArrayList<DoubleNode>();
+		AbstractDoubleNode last = head;
+		for (int i = 0; i < 100000; i++) {
+			DoubleNode next = new DoubleNode();
+			next.setLazy(true);
+			last.connect(next);
+			nodes.add(next);
+			last = next;
+		}
+		// the invalidations are queued instead of recursing down the chain
+		head.write(1.0, 1000);
+		Assert.assertEquals(1.0, nodes.get(10).read());
+		head.write(2.0, 2000);
+		Assert.assertEquals(2.0, nodes.get(10).read());
+	}
+	
+	@Test
+	public void testBreadthFirst()
+	{
+		List<Integer> log = new ArrayList<Integer>();
+		DoubleNode root = new DoubleNode();
+		DoubleNode left = new DoubleNode();
+		DoubleNode right = new DoubleNode();
+		root.connect(left);
+		root.connect(right);
+		root.connect(new Recorder(log, 0));
+		left.connect(new Recorder(log, 1));
+		right.connect(new Recorder(log, 2));
+		
+		root.write(1.0, 1000);
+		Assert.assertEquals("[1, 2, 0]", log.toString());
+		
+		log.clear();
+		DatastreamManager.getInstance().setIterativePropagation(true);
+		root.write(2.0, 2000);
+		Assert.assertEquals("[0, 1, 2]", log.toString());
+	}
+}
@@ -0,0 +1,137 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
+
+/**
+ * Test cases for the lazy mode of the numeric nodes
+ * 
+ * @author agent
+ */
+public class LazyEvaluationTest
+{
+	private static class CountingDivNode extends DivNode
+	{
+		int mWrites;
+		
+		@Override
+		protected void doWrite(String name, double value, TimeBase<?> time)
+		{
+			mWrites++;
+			super.doWrite(name, value, time);
+		}
+		
+		@Override
+		protected void doWrite(String name, double value, long timeNanos)
+		{
+			mWrites++;
+			super.doWrite(name, value, timeNanos);
+		}
+	}
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	@Test
+	public void testPull()
+	{
+		DoubleNode a = new DoubleNode();
+		DoubleNode b = new DoubleNode();
+		CountingDivNode div = new CountingDivNode();
+		DoubleNode out = new DoubleNode();
+		a.connect(div.getInput("dividend"));
+		b.connect(div.getInput("divisor"));
+		div.connect(out);
+		a.setLazy(true);
+		b.setLazy(true);
+		div.setLazy(true);
+		out.setLazy(true);
+		
+		for (int i = 1; i <= 100; i++) {
+			a.write(i, 1000*i);
+			b.write(2.0, 1000*i);
+		}
+		Assert.assertEquals(0, div.mWrites);
+		Assert.assertEquals(50.0, out.read());
+		Assert.assertEquals(100000, out.readTime().toNanos());
+		Assert.assertEquals(2, div.mWrites);
+		// reading again does not recalculate anything
+		Assert.assertEquals(50.0, out.read());
+		Assert.assertEquals(2, div.mWrites);
+		
+		a.write(300.0, 200000);
+		Assert.assertEquals(150.0, out.read());
+		Assert.assertEquals(3, div.mWrites);
+	}
+	
+	@Test
+	public void testEagerSuccessor()
+	{
+		DoubleNode a = new DoubleNode();
+		CountingDivNode div = new CountingDivNode();
+		SumNode sum = new SumNode();
+		HistoryDoubleNode history = new HistoryDoubleNode();
+		a.connect(div.getInput("dividend"));
+		((IPrimitiveDoubleWriter)div.getInput("divisor")).write(2.0, 0);
+		div.connect(sum);
+		a.connect(history);
+		a.setLazy(true);
+		div.setLazy(true);
+		
+		// successors that are not lazy still get every value
+		a.write(2.0, 1000);
+		a.write(4.0, 2000);
+		Assert.assertEquals(2, history.readHistory().size());
+		Assert.assertEquals(3.0, sum.read());
+	}
+	
+	@Test
+	public void testLazySum()
+	{
+		SumNode sum = new SumNode();
+		DoubleNode out = new DoubleNode();
+		sum.connect(out);
+		sum.setLazy(true);
+		out.setLazy(true);
+		sum.write(1.0, 1000);
+		sum.write(2.0, 2000);
+		Assert.assertEquals(3.0, out.read());
+		Assert.assertEquals(2000, out.readTime().toNanos());
+	}
+	
+	@Test
+	public void testLazySumSuccessor()
+	{
+		DoubleNode a = new DoubleNode();
+		SumNode sum = new SumNode();
+		a.connect(sum);
+		a.setLazy(true);
+		sum.setLazy(true);
+		Assert.assertFalse(sum.acceptsInvalidation());
+		a.write(1.0, 1000);
+		a.write(2.0, 2000);
+		Assert.assertEquals(3.0, sum.read());
+	}
+	
+	@Test
+	public void testLazyCounterSuccessor()
+	{
+		DoubleNode a = new DoubleNode();
+		CounterNode counter = new CounterNode();
+		a.connect(counter);
+		a.setLazy(true);
+		counter.setLazy(true);
+		Assert.assertFalse(counter.acceptsInvalidation());
+		a.write(7.0, 1000);
+		a.write(7.0, 2000);
+		Assert.assertEquals(2.0, counter.read());
+	}
+}
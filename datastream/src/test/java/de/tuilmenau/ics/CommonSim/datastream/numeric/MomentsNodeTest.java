@@ -0,0 +1,149 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+
+/**
+ * Test cases for the moments node
+ * 
+ * @author agent
+ */
+public class MomentsNodeTest
+{
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	@Test
+	public void testStatistics()
+	{
+		MomentsNode moments = MomentsNode.open("delay");
+		DoubleNode mean = new DoubleNode();
+		DoubleNode stddev = new DoubleNode();
+		moments.connect(mean);
+		((MomentsNode.Output)MomentsNode.openAsReader("delay/stddev")).connect(stddev);
+		Assert.assertTrue(Double.isNaN(moments.read()));
+		Assert.assertEquals(0.0, moments.getOutput(MomentsNode.Statistic.COUNT).read());
+		
+		// large offset, which breaks the naive sum of squares
+		double[] values = new double[10000];
+		Random random = new Random(3);
+		double sum = 0.0;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1e9+random.nextGaussian();
+			sum += values[i]-1e9;
+			MomentsNode.open("delay").write(values[i], i+1);
+		}
+		MomentsNode.open("delay").write(Double.NaN, values.length+1);
+		double expectedMean = 1e9+sum/values.length;
+		double squares = 0.0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < values.length; i++) {
+			squares += (values[i]-expectedMean)*(values[i]-expectedMean);
+			min = Math.min(min, values[i]);
+			max = Math.max(max, values[i]);
+		}
+		double expectedVariance = squares/(values.length-1);
+		
+		Assert.assertEquals(10000, moments.getCount());
+		Assert.assertEquals(expectedMean, moments.read(), 1e-6);
+		Assert.assertEquals(expectedMean, mean.read(), 1e-6);
+		Assert.assertEquals(expectedVariance, moments.getVariance(), 1e-6);
+		Assert.assertEquals(Math.sqrt(expectedVariance), stddev.read(), 1e-6);
+		Assert.assertEquals(10000, stddev.readTime().toNanos());
+		Assert.assertEquals(min, MomentsNode.openAsReader("delay/min").read());
+		Assert.assertEquals(max, moments.read(MomentsNode.Statistic.MAX));
+		Assert.assertEquals(expectedMean, MomentsNode.openAsReader("delay").read(), 1e-6);
+		
+		try {
+			MomentsNode.openAsReader("delay/median");
+			Assert.fail("Opened unknown output");
+		}
+		catch (StreamException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testParallelMerge() throws InterruptedException
+	{
+		final double[] values = new double[40000];
+		Random random = new Random(11);
+		MomentsNode all = new MomentsNode();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextDouble()*100;
+			all.write(values[i], i);
+		}
+		final MomentsNode[] parts = new MomentsNode[4];
+		Thread[] threads = new Thread[parts.length];
+		for (int t = 0; t < parts.length; t++) {
+			parts[t] = new MomentsNode();
+			final int part = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int i = part; i < values.length; i += parts.length) {
+						parts[part].write(values[i], i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+		}
+		// merge pairwise
+		parts[0].merge(parts[1]);
+		parts[2].merge(parts[3]);
+		parts[0].merge(parts[2]);
+		parts[0].merge(new MomentsNode());
+		
+		Assert.assertEquals(all.getCount(), parts[0].getCount());
+		Assert.assertEquals(all.read(), parts[0].read(), 1e-9);
+		Assert.assertEquals(all.getVariance(), parts[0].getVariance(), 1e-9);
+		Assert.assertEquals(all.read(MomentsNode.Statistic.MIN), parts[0].read(MomentsNode.Statistic.MIN));
+		Assert.assertEquals(all.read(MomentsNode.Statistic.MAX), parts[0].read(MomentsNode.Statistic.MAX));
+		Assert.assertEquals(values.length-1, parts[0].readTime().toNanos());
+		
+		MomentsNode snapshot = parts[0].snapshot(true);
+		Assert.assertEquals(all.getCount(), snapshot.getCount());
+		Assert.assertEquals(0, parts[0].getCount());
+		Assert.assertTrue(Double.isNaN(parts[0].getVariance()));
+	}
+	
+	@Test
+	public void testLazyOutputs()
+	{
+		MomentsNode moments = new MomentsNode();
+		DivNode cv = new DivNode();
+		DoubleNode out = new DoubleNode();
+		moments.getOutput(MomentsNode.Statistic.STDDEV).connect(cv.getInput("dividend"));
+		moments.getOutput("mean").connect(cv.getInput("divisor"));
+		cv.connect(out);
+		moments.setLazy(true);
+		cv.setLazy(true);
+		out.setLazy(true);
+		
+		for (int i = 1; i <= 4; i++) {
+			moments.write(2.0*i, 1000*i);
+		}
+		// values 2, 4, 6, 8: mean 5, sample variance 20/3
+		Assert.assertEquals(Math.sqrt(20.0/3.0)/5.0, out.read(), 1e-12);
+		Assert.assertEquals(4000, out.readTime().toNanos());
+		
+		moments.writeBatch(new double[] { 5.0, 5.0 }, new long[] { 5000, 6000 }, 0, 2);
+		Assert.assertEquals(6, moments.getCount());
+		Assert.assertEquals(Math.sqrt(4.0)/5.0, out.read(), 1e-12);
+	}
+}
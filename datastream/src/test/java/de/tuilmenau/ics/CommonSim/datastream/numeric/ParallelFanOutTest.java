@@ -0,0 +1,130 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+
+/**
+ * Test cases for writing to the successors in parallel
+ * 
+ * @author agent
+ */
+public class ParallelFanOutTest
+{
+	private ExecutorService mExecutor;
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+		mExecutor = Executors.newFixedThreadPool(4);
+	}
+	
+	@After
+	public void teardown()
+	{
+		mExecutor.shutdown();
+	}
+	
+	@Test
+	public void testFanOut()
+	{
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		DoubleNode producer = new DoubleNode();
+		SumNode[] sums = new SumNode[50];
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = new SumNode() {
+				@Override
+				public void write(double value, long timeNanos)
+				{
+					threads.add(Thread.currentThread());
+					super.write(value, timeNanos);
+				}
+			};
+			producer.connect(sums[i]);
+		}
+		producer.setFanOut(new ParallelFanOut(mExecutor, 4));
+		
+		for (int i = 1; i <= 100; i++) {
+			producer.write(i, 1000*i);
+		}
+		producer.writeBatch(new double[] { 1.0, 2.0 }, new long[] { 200000, 201000 }, 0, 2);
+		for (int i = 0; i < sums.length; i++) {
+			Assert.assertEquals(5053.0, sums[i].read());
+		}
+		Assert.assertTrue(threads.contains(Thread.currentThread()));
+		Assert.assertTrue(threads.size() > 1);
+	}
+	
+	@Test
+	public void testFailure()
+	{
+		DoubleNode producer = new DoubleNode();
+		DoubleNode last = new DoubleNode();
+		producer.connect(new DoubleNode() {
+			@Override
+			public void write(double value, long timeNanos)
+			{
+				throw new IllegalStateException("failed");
+			}
+		});
+		for (int i = 0; i < 7; i++) {
+			producer.connect(new DoubleNode());
+		}
+		producer.connect(last);
+		producer.setFanOut(new ParallelFanOut(mExecutor, 3));
+		try {
+			producer.write(1.0, 1000);
+			Assert.fail("Exception of successor not passed on");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		// the other groups were written anyway
+		Assert.assertEquals(1.0, last.read());
+	}
+	
+	/**
+	 * Test whether concurrent writes to a node sharing its tasks all arrive.
+	 */
+	@Test
+	public void testConcurrentWriters() throws InterruptedException
+	{
+		final DoubleNode producer = new DoubleNode();
+		StripedSumNode[] sums = new StripedSumNode[8];
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = new StripedSumNode();
+			producer.connect(sums[i]);
+		}
+		producer.setFanOut(new ParallelFanOut(mExecutor, 4));
+		Thread[] writers = new Thread[4];
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 1000; j++) {
+						producer.write(1.0, j);
+					}
+				}
+			};
+			writers[i].start();
+		}
+		for (Thread t : writers) {
+			t.join();
+		}
+		for (int i = 0; i < sums.length; i++) {
+			Assert.assertEquals(4000.0, sums[i].read());
+		}
+	}
+}
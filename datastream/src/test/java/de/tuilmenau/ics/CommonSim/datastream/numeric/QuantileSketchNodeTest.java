@@ -0,0 +1,180 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamException;
+
+/**
+ * Test cases for the quantile sketch node
+ * 
+ * @author agent
+ */
+public class QuantileSketchNodeTest
+{
+	private static final double RANK_ERROR = 0.02;
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	private static void assertRank(double[] sorted, double quantile, double actual)
+	{
+		int lower = Arrays.binarySearch(sorted, actual);
+		Assert.assertTrue("value "+actual+" not written", lower >= 0);
+		double rank = (double)(lower+1)/sorted.length;
+		Assert.assertTrue("quantile "+quantile+" estimated at rank "+rank, Math.abs(rank-quantile) <= RANK_ERROR);
+	}
+	
+	@Test
+	public void testQuantiles()
+	{
+		QuantileSketchNode sketch = QuantileSketchNode.open("delay");
+		DoubleNode out = new DoubleNode();
+		sketch.connect(out);
+		Assert.assertTrue(Double.isNaN(sketch.read()));
+		Random random = new Random(42);
+		double[] values = new double[100000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextGaussian();
+			QuantileSketchNode.open("delay").write(values[i], i+1);
+		}
+		Arrays.sort(values);
+		Assert.assertEquals(100000, sketch.getCount());
+		Assert.assertTrue(sketch.getRetained() < 3*QuantileSketchNode.DEFAULT_K);
+		Assert.assertEquals(sketch.read(), out.read());
+		Assert.assertEquals(100000, sketch.readTime().toNanos());
+		assertRank(values, 0.5, sketch.read());
+		assertRank(values, 0.01, sketch.read(0.01));
+		assertRank(values, 0.9, sketch.read(0.9));
+		assertRank(values, 0.99, sketch.read(0.99));
+		Assert.assertEquals(values[0], sketch.read(0.0));
+		Assert.assertEquals(values[values.length-1], sketch.read(1.0));
+	}
+	
+	/**
+	 * Test whether the quantile written to the successors is kept between compactions and
+	 * computed again after each compaction.
+	 */
+	@Test
+	public void testSuccessorBetweenCompactions()
+	{
+		QuantileSketchNode sketch = new QuantileSketchNode(50, 0.9);
+		DoubleNode out = new DoubleNode();
+		sketch.connect(out);
+		Random random = new Random(3);
+		int retained = 0;
+		double output = Double.NaN;
+		int compactions = 0;
+		long computed = 0;
+		for (int i = 0; i < 20000; i++) {
+			sketch.write(random.nextDouble(), i);
+			Assert.assertEquals(sketch.read(), out.read());
+			if (sketch.getRetained() <= retained) {
+				compactions++;
+				computed = i+1;
+				Assert.assertEquals(sketch.read(0.9), out.read());
+			}
+			else if (i+1 >= 2*computed) {
+				// computed again when the number of values doubled
+				computed = i+1;
+				Assert.assertEquals(sketch.read(0.9), out.read());
+			}
+			else {
+				Assert.assertEquals(output, out.read());
+			}
+			retained = sketch.getRetained();
+			output = out.read();
+			if (i % 97 == 0) {
+				QuantileSketchNode copy = new QuantileSketchNode(50, 0.9);
+				copy.merge(sketch.toByteArray());
+				Assert.assertEquals(sketch.getRetained(), copy.getRetained());
+				Assert.assertEquals(copy.read(0.1), sketch.read(0.1));
+				Assert.assertEquals(copy.read(0.9), sketch.read(0.9));
+			}
+		}
+		Assert.assertTrue(compactions > 100);
+	}
+	
+	@Test
+	public void testMerge()
+	{
+		QuantileSketchNode all = new QuantileSketchNode();
+		QuantileSketchNode first = new QuantileSketchNode();
+		QuantileSketchNode second = new QuantileSketchNode();
+		double[] values = new double[50000];
+		Random random = new Random(7);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextDouble();
+			all.write(values[i], i);
+			(i < values.length/2 ? first : second).write(values[i], i);
+		}
+		Arrays.sort(values);
+		first.merge(second);
+		Assert.assertEquals(all.getCount(), first.getCount());
+		Assert.assertEquals(25000, second.getCount());
+		for (double q = 0.1; q < 1.0; q += 0.1) {
+			assertRank(values, q, first.read(q));
+		}
+		
+		// merging the serialized state of an empty sketch changes nothing
+		double median = first.read();
+		first.merge(new QuantileSketchNode().toByteArray());
+		Assert.assertEquals(median, first.read());
+		
+		QuantileSketchNode copy = new QuantileSketchNode();
+		copy.merge(first.toByteArray());
+		Assert.assertEquals(first.getCount(), copy.getCount());
+		Assert.assertEquals(first.getRetained(), copy.getRetained());
+		Assert.assertEquals(median, copy.read());
+		Assert.assertEquals(first.read(0.0), copy.read(0.0));
+		
+		try {
+			first.merge(new QuantileSketchNode(100, 0.5));
+			Assert.fail("Merged sketches with different k");
+		}
+		catch (StreamException e) {
+			// expected
+		}
+		try {
+			first.merge(new byte[] { 1, 2, 3 });
+			Assert.fail("Merged invalid state");
+		}
+		catch (StreamException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testLazyQuantiles()
+	{
+		QuantileSketchNode sketch = new QuantileSketchNode(QuantileSketchNode.DEFAULT_K, 0.9);
+		DivNode div = new DivNode();
+		DoubleNode out = new DoubleNode();
+		DoubleNode median = new DoubleNode();
+		sketch.connect(div.getInput("dividend"));
+		median.connect(div.getInput("divisor"));
+		div.connect(out);
+		sketch.setLazy(true);
+		div.setLazy(true);
+		out.setLazy(true);
+		
+		for (int i = 1; i <= 1000; i++) {
+			sketch.write(i, i);
+		}
+		IDoubleReader p50 = sketch.getQuantile(0.5);
+		median.write(p50.read(), p50.readTime());
+		Assert.assertEquals(500.0, p50.read(), 1000*RANK_ERROR);
+		Assert.assertEquals(900.0, sketch.read(), 1000*RANK_ERROR);
+		Assert.assertEquals(sketch.read()/p50.read(), out.read(), 1e-9);
+		Assert.assertEquals(1000, out.readTime().toNanos());
+	}
+}
@@ -0,0 +1,108 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.IObservable;
+import de.tuilmenau.ics.CommonSim.datastream.IObserver;
+
+/**
+ * Test cases for the striped counter and sum
+ * 
+ * @author agent
+ */
+public class StripedNodeTest
+{
+	private static final int THREADS = 8;
+	private static final int WRITES = 100000;
+	
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	private static void writeConcurrently(final IPrimitiveDoubleWriter writer, final double value) throws InterruptedException
+	{
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < WRITES; i++) {
+						writer.write(value, i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < THREADS; t++) {
+			threads[t].join();
+		}
+	}
+	
+	@Test
+	public void testCounter() throws InterruptedException
+	{
+		StripedCounterNode counter = new StripedCounterNode();
+		Assert.assertNull(counter.readTime());
+		writeConcurrently(counter, 2.0);
+		Assert.assertEquals((long)THREADS*WRITES, counter.getCount());
+		Assert.assertEquals(WRITES-1, counter.readTime().toNanos());
+		counter.write(-5.0, WRITES);
+		counter.write(0.0, WRITES+1);
+		Assert.assertEquals(THREADS*WRITES-1.0, counter.read());
+		counter.reset();
+		Assert.assertEquals(0.0, counter.read());
+		Assert.assertNull(counter.readTime());
+	}
+	
+	@Test
+	public void testSum() throws InterruptedException
+	{
+		StripedSumNode sum = new StripedSumNode();
+		DoubleNode out = new DoubleNode();
+		sum.connect(out);
+		writeConcurrently(sum, 0.5);
+		Assert.assertEquals(THREADS*WRITES*0.5, sum.read());
+		sum.write(1.0, WRITES);
+		Assert.assertEquals(THREADS*WRITES*0.5+1.0, out.read());
+		sum.reset();
+		Assert.assertEquals(0.0, sum.read());
+		Assert.assertNull(sum.readTime());
+	}
+	
+	@Test
+	public void testSampling()
+	{
+		final int[] notified = new int[2];
+		StripedSumNode sum = new StripedSumNode(100);
+		StripedCounterNode counter = new StripedCounterNode(10);
+		sum.registerObserver(new IObserver() {
+			@Override
+			public void notify(IObservable source)
+			{
+				notified[0]++;
+			}
+		});
+		counter.registerObserver(new IObserver() {
+			@Override
+			public void notify(IObservable source)
+			{
+				notified[1]++;
+			}
+		});
+		for (int i = 0; i < 1000; i++) {
+			sum.write(1.0, i);
+			counter.write(1.0, i);
+		}
+		Assert.assertEquals(10, notified[0]);
+		Assert.assertEquals(100, notified[1]);
+		Assert.assertEquals(1000.0, sum.read());
+		Assert.assertEquals(1000, counter.getCount());
+	}
+}
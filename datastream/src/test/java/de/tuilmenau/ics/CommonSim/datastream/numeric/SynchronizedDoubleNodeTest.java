@@ -1,11 +1,14 @@
 package de.tuilmenau.ics.CommonSim.datastream.numeric;
 
+import java.util.concurrent.CountDownLatch;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
 import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.TimeBase;
 
 /**
  * Unit test for the DoubleNode  
@@ -57,4 +60,68 @@ public void connectionTest()
 		mWriter.write(1.5, StreamTime.ZERO);
 		Assert.assertEquals(1.5, SynchronizedDoubleNode.openAsReader("test2").read(), 0.0);
 	}
+	
+	/**
+	 * Test whether value and time are always read together while another thread writes.
+	 */
+	@Test
+	public void testConsistentSample() throws InterruptedException
+	{
+		final SynchronizedDoubleNode node = (SynchronizedDoubleNode)SynchronizedDoubleNode.open("test");
+		Thread writer = new Thread() {
+			@Override
+			public void run()
+			{
+				for (int i = 1; i <= 200000; i++) {
+					node.write(i, i);
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive()) {
+			HistoryDoubleNode.Tuple sample = node.readSample();
+			if (sample.time != null) {
+				Assert.assertEquals(sample.value, sample.time.toNanos(), 0.0);
+			}
+		}
+		writer.join();
+		Assert.assertEquals(200000.0, node.read(), 0.0);
+	}
+	
+	/**
+	 * Test whether readers do not wait for the successors of a write.
+	 */
+	@Test
+	public void testReadDuringPropagation() throws InterruptedException
+	{
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		SynchronizedDoubleNode.open("test").connect(new DoubleNode() {
+			@Override
+			public void write(double value, TimeBase<?> time)
+			{
+				entered.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		Thread writer = new Thread() {
+			@Override
+			public void run()
+			{
+				mWriter.write(2.5, new StreamTime(2.0));
+			}
+		};
+		writer.start();
+		entered.await();
+		// the successor is still busy with the value
+		Assert.assertEquals(2.5, mReader.read(), 0.0);
+		Assert.assertEquals(2.0, mReader.readTime().toSeconds(), 0.0);
+		release.countDown();
+		writer.join();
+	}
 }
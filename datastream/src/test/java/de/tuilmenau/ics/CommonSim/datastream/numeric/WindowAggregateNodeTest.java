@@ -0,0 +1,122 @@
+package de.tuilmenau.ics.CommonSim.datastream.numeric;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuilmenau.ics.CommonSim.datastream.DatastreamManager;
+import de.tuilmenau.ics.CommonSim.datastream.StreamTime;
+import de.tuilmenau.ics.CommonSim.datastream.numeric.WindowAggregateNode.Aggregate;
+
+/**
+ * Test cases for the window aggregates
+ * 
+ * @author agent
+ */
+public class WindowAggregateNodeTest
+{
+	@Before
+	public void setup()
+	{
+		DatastreamManager.clear();
+	}
+	
+	/**
+	 * Compare the sliding aggregates with a brute force calculation over random values.
+	 */
+	@Test
+	public void testSliding()
+	{
+		Random random = new Random(42);
+		int n = 2000;
+		double[] values = new double[n];
+		long[] times = new long[n];
+		long time = 0;
+		for (int i = 0; i < n; i++) {
+			time += random.nextInt(100);
+			times[i] = time;
+			values[i] = random.nextGaussian();
+		}
+		long length = 1000;
+		for (Aggregate aggregate : Aggregate.values()) {
+			WindowAggregateNode node = new WindowAggregateNode(aggregate, length, true);
+			for (int i = 0; i < n; i++) {
+				node.write(values[i], times[i]);
+				long count = 0;
+				double sum = 0.0;
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int j = 0; j <= i; j++) {
+					if (times[j] > times[i]-length) {
+						count++;
+						sum += values[j];
+						min = Math.min(min, values[j]);
+						max = Math.max(max, values[j]);
+					}
+				}
+				double expected;
+				switch (aggregate) {
+				case COUNT: expected = count; break;
+				case SUM:   expected = sum; break;
+				case MEAN:  expected = sum/count; break;
+				case MIN:   expected = min; break;
+				default:    expected = max; break;
+				}
+				Assert.assertEquals(aggregate+" at "+i, expected, node.read(), 1e-9);
+				Assert.assertEquals(times[i], node.readTime().toNanos());
+			}
+		}
+	}
+	
+	@Test
+	public void testTumbling()
+	{
+		WindowAggregateNode node = WindowAggregateNode.tumbling(Aggregate.MAX, StreamTime.fromNanos(100));
+		HistoryDoubleNode history = new HistoryDoubleNode(10);
+		node.connect(history);
+		node.write(1.0, 0);
+		node.write(3.0, 50);
+		node.write(2.0, 99);
+		Assert.assertNull(node.readTime());
+		Assert.assertEquals(0, history.readHistory().size());
+		// closes [0, 100)
+		node.write(5.0, 100);
+		Assert.assertEquals(3.0, node.read());
+		Assert.assertEquals(100, node.readTime().toNanos());
+		// skips the empty window [200, 300)
+		node.write(4.0, 310);
+		Assert.assertEquals(5.0, node.read());
+		Assert.assertEquals(200, node.readTime().toNanos());
+		node.flush();
+		Assert.assertEquals(4.0, node.read());
+		Assert.assertEquals(400, node.readTime().toNanos());
+		Assert.assertEquals(3, history.readHistory().size());
+		
+		// the same as a batch
+		WindowAggregateNode batched = WindowAggregateNode.tumbling(Aggregate.MEAN, StreamTime.fromNanos(100));
+		HistoryDoubleNode batchHistory = new HistoryDoubleNode(10);
+		batched.connect(batchHistory);
+		batched.writeBatch(new double[] { 1.0, 3.0, 2.0, 5.0, 4.0 }, new long[] { 0, 50, 99, 100, 310 }, 0, 5);
+		Assert.assertEquals(2, batchHistory.readHistory().size());
+		Assert.assertEquals(5.0, batched.read());
+		Assert.assertEquals(200, batched.readTime().toNanos());
+	}
+	
+	@Test
+	public void testWithoutTime()
+	{
+		WindowAggregateNode node = WindowAggregateNode.tumbling(Aggregate.SUM, StreamTime.fromNanos(100));
+		// values without a time are added at the latest time
+		node.write(1.0, null);
+		node.write(2.0, 150);
+		node.write(3.0, null);
+		Assert.assertEquals(1.0, node.read());
+		Assert.assertEquals(100, node.readTime().toNanos());
+		node.flush();
+		Assert.assertEquals(5.0, node.read());
+		Assert.assertEquals(200, node.readTime().toNanos());
+	}
+}